@@ -56,6 +56,7 @@ import java.util.*;
 public class JetaProcessor extends AbstractProcessor {
 
     public static final String METACODE_CLASS_POSTFIX = "_Metacode";
+    private static final String STATELESS_UTD_SUFFIX = ":s";
 
     private Messager logger;
 
@@ -376,7 +377,11 @@ public class JetaProcessor extends AbstractProcessor {
             MetacodeContextImpl context = iter.next();
             if (utdPropertiesCopy != null) {
                 if (utdPropertiesCopy.containsKey(context.metacodeCanonicalName)) {
-                    long modifiedTs = Long.parseLong(utdPropertiesCopy.getProperty(context.metacodeCanonicalName));
+                    // timestamp of the master's source file, ':s' suffix marks stateless metacode
+                    String utdValue = utdPropertiesCopy.getProperty(context.metacodeCanonicalName);
+                    context.stateless = utdValue.endsWith(STATELESS_UTD_SUFFIX);
+                    long modifiedTs = Long.parseLong(context.stateless ?
+                            utdValue.substring(0, utdValue.length() - STATELESS_UTD_SUFFIX.length()) : utdValue);
                     if (modifiedTs > 0) {
                         // check metacode exists
                         if (Files.exists(Paths.get(getMetacodeFileObject(context.metacodeCanonicalName).toUri()))) {
@@ -507,7 +512,9 @@ public class JetaProcessor extends AbstractProcessor {
 
             if (context.processors.isEmpty()) {
                 String pkg = processingEnv.getElementUtils().getPackageOf(context.masterElement).getQualifiedName().toString();
-                JavaFile.Builder fileBuilder = JavaFile.builder(pkg, context.builder.build()).indent("\t");
+                TypeSpec typeSpec = context.builder.build();
+                context.stateless = isStateless(typeSpec);
+                JavaFile.Builder fileBuilder = JavaFile.builder(pkg, typeSpec).indent("\t");
                 if (properties.containsKey("file.comment"))
                     fileBuilder.addFileComment(properties.getProperty("file.comment"));
 
@@ -521,7 +528,8 @@ public class JetaProcessor extends AbstractProcessor {
 
                     if (utdProperties != null) {
                         File sourceJavaFile = new File(getSourceJavaFile(context.masterElement));
-                        utdProperties.put(context.metacodeCanonicalName, String.valueOf(sourceJavaFile.lastModified()));
+                        utdProperties.put(context.metacodeCanonicalName, String.valueOf(sourceJavaFile.lastModified()) +
+                                (context.stateless ? STATELESS_UTD_SUFFIX : ""));
 
                         // move actual source file to utd dir and create a hard link to it. this trick is
                         // necessary to be able to simulate generating source file if its master is up to date.
@@ -556,6 +564,13 @@ public class JetaProcessor extends AbstractProcessor {
         return reclaim;
     }
 
+    private boolean isStateless(TypeSpec typeSpec) {
+        for (FieldSpec fieldSpec : typeSpec.fieldSpecs)
+            if (!fieldSpec.modifiers.contains(Modifier.STATIC))
+                return false;
+        return true;
+    }
+
     private String getUtdPropertiesFilePath() {
         return getUtdDirPath() + "utd.properties";
     }
@@ -670,6 +685,7 @@ public class JetaProcessor extends AbstractProcessor {
         private final Set<TypeElement> metacodeAnnotations;
 
         private boolean utd = false;
+        private boolean stateless = false;
 
         public MetacodeContextImpl(TypeElement masterElement) {
             this.processors = HashMultimap.create();
@@ -692,6 +708,10 @@ public class JetaProcessor extends AbstractProcessor {
         public boolean isUpToDate() {
             return utd;
         }
+
+        public boolean isStateless() {
+            return stateless;
+        }
     }
 
     private static class Messager implements Logger {
@@ -39,4 +39,9 @@ public interface MetacodeContext {
      * true if masters source code hasn't been changed since metacode generated
      */
     boolean isUpToDate();
+
+    /**
+     * true if metacode has no instance fields, so one instance can be shared between the searches
+     */
+    boolean isStateless();
 }   
@@ -36,6 +36,7 @@ import java.util.Map;
 
 /**
  * jetaMapMetasitoryPackage=com.example             - metasitory package
+ * metasitory.metacode.singleton=true               - stateless metacodes are created once, lazily, and shared
  *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
@@ -47,10 +48,13 @@ public class MapMetasitoryWriter implements MetasitoryWriter {
     protected TypeSpec.Builder typeBuilder;
     protected MethodSpec.Builder methodBuilder;
 
+    protected boolean singletons;
+
     @Override
     public void open(ProcessingContext env) {
         this.env = env;
         logger = env.logger();
+        singletons = env.processingProperties().getProperty("metasitory.metacode.singleton", "false").equals("true");
 
         typeBuilder = TypeSpec.classBuilder("MetasitoryContainer")
                 .addModifiers(Modifier.PUBLIC)
@@ -79,6 +83,29 @@ public class MapMetasitoryWriter implements MetasitoryWriter {
                         return "\n\t\t\t" + input.getQualifiedName().toString() + ".class";
                     }
                 }));
+        if (singletons && context.isStateless()) {
+            methodBuilder.addCode("result.put($L.class,\n" +
+                            "\tnew $T(\n" +
+                            "\t\t$L.class,\n" +
+                            "\t\tnew org.brooth.jeta.Provider<$L>() {\n" +
+                            "\t\t\tprivate volatile $L instance;\n" +
+                            "\t\t\tpublic $L get() {\n" +
+                            "\t\t\t\t$L result = instance;\n" +
+                            "\t\t\t\tif (result == null) {\n" +
+                            "\t\t\t\t\tsynchronized (this) {\n" +
+                            "\t\t\t\t\t\tresult = instance;\n" +
+                            "\t\t\t\t\t\tif (result == null)\n" +
+                            "\t\t\t\t\t\t\tinstance = result = new $L();\n" +
+                            "\t\t\t\t\t}\n" +
+                            "\t\t\t\t}\n" +
+                            "\t\t\t\treturn result;\n" +
+                            "\t\t}},\n" +
+                            "\t\tnew Class[] {$L\n\t\t}));\n",
+                    master, TypeName.get(MapMetasitoryContainer.Context.class), master, metacode, metacode, metacode,
+                    metacode, metacode, annotations);
+            return;
+        }
+
         methodBuilder.addCode("result.put($L.class,\n" +
                         "\tnew $T(\n" +
                         "\t\t$L.class,\n" +
@@ -19,13 +19,12 @@ package org.brooth.jeta.apt.processors;
 import com.google.common.base.CaseFormat;
 import com.squareup.javapoet.*;
 import org.brooth.jeta.apt.RoundContext;
+import org.brooth.jeta.observer.ObservableLocks;
 import org.brooth.jeta.observer.ObservableMetacode;
 import org.brooth.jeta.observer.Subject;
 
 import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * @author Oleg Khalidov (brooth@gmail.com)
@@ -50,21 +49,7 @@ public class ObservableProcessor extends AbstractProcessor {
         for (Element element : context.elements()) {
             String fieldName = element.getSimpleName().toString();
 
-            String monitorFiledName = fieldName + "_MONITOR";
-            builder.addField(FieldSpec.builder(Object.class, monitorFiledName)
-                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
-                    .initializer("new Object()")
-                    .build());
-
             TypeName observersTypeName = TypeName.get(element.asType());
-            TypeName mapTypeName = ParameterizedTypeName.get(ClassName.get(Map.class),
-                    masterClassName, observersTypeName);
-            FieldSpec observersField = FieldSpec.builder(mapTypeName, fieldName)
-                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
-                    .initializer("new $T()", ParameterizedTypeName.get(ClassName.get(WeakHashMap.class),
-                            masterClassName, observersTypeName))
-                    .build();
-            builder.addField(observersField);
 
             String eventTypeStr = observersTypeName.toString();
             int i = eventTypeStr.indexOf('<');
@@ -77,24 +62,22 @@ public class ObservableProcessor extends AbstractProcessor {
                             CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, eventTypeStr)
                                     .replaceAll("\\.", "_")) + "Observers";
 
+            // kept by the master itself, created once under a lock striped by the master's identity.
+            // The field isn't volatile, so it's read under the lock as well
             MethodSpec getObserversMethodSpec = MethodSpec.methodBuilder(methodHashName)
                     .addModifiers(Modifier.STATIC, Modifier.PUBLIC)
                     .returns(observersTypeName)
                     .addParameter(masterClassName, "master")
-                    .addStatement("$T result = $L.get(master)", observersTypeName, fieldName)
-                    .beginControlFlow("if (result == null)")
-                    .beginControlFlow("synchronized ($L)", monitorFiledName)
-                    .beginControlFlow("if (!$L.containsKey(master))", fieldName)
-                    .addStatement("result = new $T()", observersTypeName)
-                    .addStatement("$L.put(master, result)", fieldName)
-                    .endControlFlow()
+                    .beginControlFlow("synchronized ($T.lockOf(master))", ClassName.get(ObservableLocks.class))
+                    .beginControlFlow("if (master.$L == null)", fieldName)
+                    .addStatement("master.$L = new $T()", fieldName, observersTypeName)
                     .endControlFlow()
+                    .addStatement("return master.$L", fieldName)
                     .endControlFlow()
-                    .addStatement("return result")
                     .build();
             builder.addMethod(getObserversMethodSpec);
 
-            applyMethodSpecBuilder.addStatement("master.$L = $L(master)", fieldName, methodHashName);
+            applyMethodSpecBuilder.addStatement("$L(master)", methodHashName);
         }
         builder.addMethod(applyMethodSpecBuilder.build());
 
@@ -21,16 +21,14 @@ import com.squareup.javapoet.*;
 import org.brooth.jeta.apt.MetacodeUtils;
 import org.brooth.jeta.apt.ProcessingException;
 import org.brooth.jeta.apt.RoundContext;
-import org.brooth.jeta.observer.EventObserver;
-import org.brooth.jeta.observer.Observe;
-import org.brooth.jeta.observer.ObserverHandler;
-import org.brooth.jeta.observer.ObserverMetacode;
+import org.brooth.jeta.observer.*;
 
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.VariableElement;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * @author Oleg Khalidov (brooth@gmail.com)
@@ -43,9 +41,19 @@ import java.util.List;
     public boolean process(TypeSpec.Builder builder, RoundContext context) {
         ClassName masterClassName = ClassName.get(context.metacodeContext().masterElement());
         builder.addSuperinterface(ParameterizedTypeName.get(
-                ClassName.get(ObserverMetacode.class), masterClassName));
+                ClassName.get(ExecutorObserverMetacode.class), masterClassName));
         ClassName handlerClassName = ClassName.get(ObserverHandler.class);
 
+        builder.addMethod(MethodSpec.methodBuilder("applyObservers")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(handlerClassName)
+                .addParameter(masterClassName, "master")
+                .addParameter(Object.class, "observable")
+                .addParameter(Class.class, "observableClass")
+                .addStatement("return applyObservers(master, observable, observableClass, null)")
+                .build());
+
         MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder("applyObservers")
                 .addAnnotation(Override.class)
                 .addModifiers(Modifier.PUBLIC)
@@ -53,7 +61,9 @@ import java.util.List;
                 .addParameter(masterClassName, "master", Modifier.FINAL)
                 .addParameter(Object.class, "observable")
                 .addParameter(Class.class, "observableClass")
-                .addStatement("$T handler = new $T()", handlerClassName, handlerClassName);
+                .addParameter(NamedExecutorProvider.class, "executors")
+                .addStatement("$T handler = new $T()", handlerClassName, handlerClassName)
+                .beginControlFlow("try");
 
         for (Element element : context.elements()) {
             List observableClasses = (List) MetacodeUtils.getAnnotationValue(element, annotationElement, "value");
@@ -77,27 +87,55 @@ import java.util.List;
                                 CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, eventTypeName.toString())
                                         .replaceAll("\\.", "_")) + "Observers";
 
+                Observe annotation = element.getAnnotation(Observe.class);
+                String methodName = element.getSimpleName().toString();
+                MethodSpec.Builder onEventMethodBuilder = MethodSpec.methodBuilder("onEvent")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(void.class);
+                if (annotation.mode() == Observe.Mode.INLINE) {
+                    onEventMethodBuilder
+                            .addParameter(eventTypeName, "event")
+                            .addStatement("master.$N(event)", methodName);
+                } else {
+                    onEventMethodBuilder
+                            .addParameter(eventTypeName, "event", Modifier.FINAL)
+                            .addStatement("executor.execute($L)", TypeSpec.anonymousClassBuilder("")
+                                    .addSuperinterface(Runnable.class)
+                                    .addMethod(MethodSpec.methodBuilder("run")
+                                            .addAnnotation(Override.class)
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(void.class)
+                                            .addStatement("master.$N(event)", methodName)
+                                            .build())
+                                    .build());
+                }
+
                 TypeSpec eventObserverTypeSpec = TypeSpec.anonymousClassBuilder("")
                         .addSuperinterface(ParameterizedTypeName.get(
                                 ClassName.get(EventObserver.class), eventTypeName))
-                        .addMethod(MethodSpec.methodBuilder("onEvent")
-                                .addAnnotation(Override.class)
-                                .addModifiers(Modifier.PUBLIC)
-                                .addParameter(eventTypeName, "event")
-                                .returns(void.class)
-                                .addStatement("master.$N(event)", element.getSimpleName().toString())
-                                .build())
+                        .addMethod(onEventMethodBuilder.build())
                         .build();
 
+                methodBuilder.beginControlFlow("if ($T.class == observableClass)", observableTypeName);
+                // resolved once, every registration of a serial observer gets its own queue
+                if (annotation.mode() != Observe.Mode.INLINE)
+                    methodBuilder.addStatement("final $T executor = $T.of(executors, $S, $L)",
+                            Executor.class, SerialExecutor.class, annotation.executor(),
+                            annotation.mode() == Observe.Mode.SERIAL);
                 methodBuilder
-                        .beginControlFlow("if ($T.class == observableClass)", observableTypeName)
                         .addStatement("handler.add($T.class, $T.class,\n$T.$L(($T) observable).\nregister($L))",
                                 observableTypeName, eventTypeName, metacodeTypeName, methodHashName,
                                 observableTypeName, eventObserverTypeSpec)
                         .endControlFlow();
             }
         }
-        methodBuilder.addStatement("return handler");
+        methodBuilder
+                .nextControlFlow("catch ($T e)", RuntimeException.class)
+                .addStatement("handler.unregisterAll()")
+                .addStatement("throw e")
+                .endControlFlow()
+                .addStatement("return handler");
         builder.addMethod(methodBuilder.build());
         return false;
     }
@@ -31,6 +31,8 @@ import javax.annotation.Nullable;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.*;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -52,6 +54,8 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
 
     private TypeElement module;
     private Set<Element> allProducers;
+    @Nullable
+    private Set<String> allEntityTypes;
 
     public ScopeProcessor() {
         super(Scope.class);
@@ -140,17 +144,20 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
                 .returns(boolean.class);
 
         String scopeExtClassStr = MetacodeUtils.getAnnotationValueAsString(masterElement, annotationElement, "ext");
+        ClassName metaScopeExtClassName = null;
         if (scopeExtClassStr == null) {
-            metaScopeTypeSpecBuilder.addSuperinterface(metaScopeTypeName);
+            metaScopeTypeSpecBuilder
+                    .addSuperinterface(metaScopeTypeName)
+                    .addSuperinterface(ClassName.get(MetaProducerTable.Holder.class));
             assignableMethodBuilder.addStatement(assignableStatement,
                     TypeName.get(context.metacodeContext().masterElement().asType()));
         } else {
             metaScopeConstructorBuilder.addStatement("super(scope)");
 
             ClassName scopeExtClassName = ClassName.bestGuess(scopeExtClassStr);
-            ClassName metaScopeImplClassName = ClassName.get(scopeExtClassName.packageName(),
+            metaScopeExtClassName = ClassName.get(scopeExtClassName.packageName(),
                     MetacodeUtils.toSimpleMetacodeName(scopeExtClassName.simpleName()), "MetaScopeImpl");
-            metaScopeTypeSpecBuilder.superclass(ParameterizedTypeName.get(metaScopeImplClassName, sTypeVariableName));
+            metaScopeTypeSpecBuilder.superclass(ParameterizedTypeName.get(metaScopeExtClassName, sTypeVariableName));
 
             assignableMethodBuilder.addStatement(assignableExtStatement,
                     TypeName.get(context.metacodeContext().masterElement().asType()));
@@ -166,7 +173,30 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
                 .addTypeVariable(eTypeVariableName)
                 .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), eTypeVariableName), "entityClass")
                 .returns(ParameterizedTypeName.get(ClassName.get(MetaProducer.class),
-                        WildcardTypeName.subtypeOf(eTypeVariableName)));
+                        WildcardTypeName.subtypeOf(eTypeVariableName)))
+                .addStatement("return (MetaProducer<? extends E>) META_PRODUCERS.get(entityClass, this)");
+
+        // table of the scope, a copy of the ext scope's one plus own entities, see MetaProducerTable
+        ClassName metaProducerTableClassName = ClassName.get(MetaProducerTable.class);
+        MethodSpec.Builder getterMethodBuilder = MethodSpec.methodBuilder("get")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(metaProducerClassName, WildcardTypeName.subtypeOf(Object.class)))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(MetaScope.class),
+                        WildcardTypeName.subtypeOf(Object.class)), "metaScope")
+                .addParameter(int.class, "index")
+                .addStatement("$L<?> impl = ($L<?>) metaScope", metaScopeSimpleNameStr, metaScopeSimpleNameStr)
+                .beginControlFlow("switch (index)");
+        MethodSpec.Builder instanceMethodBuilder = MethodSpec.methodBuilder("getInstance")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(MetaScope.class),
+                        WildcardTypeName.subtypeOf(Object.class)), "metaScope")
+                .addParameter(int.class, "index");
+        // warm-up singletons only, see below
+        CodeBlock.Builder instanceCasesBuilder = CodeBlock.builder();
+        CodeBlock.Builder tableEntriesBuilder = CodeBlock.builder();
 
         String masterPackageStr = env.getElementUtils().getPackageOf(masterElement).getQualifiedName().toString();
         int entityImplFieldIndex = 0;
@@ -195,19 +225,24 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
             String metaProducerImplMethodName = ofClassName.packageName().replace('.', '_') + '_' +
                     MetacodeUtils.toSimpleMetaName(ofTypeStr, '_' + masterClassName.simpleName() + "_MetaProducer");
 
+            // created once per meta scope, the lock is the meta scope's own, so the scopes don't wait for each other.
+            // singletons are kept by the producer, so it must not be created twice
             metaScopeTypeSpecBuilder
-                    .addField(producerMetacodeClassName, entityImplNameStr, Modifier.PRIVATE)
+                    .addField(producerMetacodeClassName, entityImplNameStr, Modifier.PRIVATE, Modifier.VOLATILE)
                     .addMethod(MethodSpec.methodBuilder(metaProducerImplMethodName)
                             .addModifiers(Modifier.PUBLIC)
                             .returns(producerMetacodeClassName)
-                            .beginControlFlow("if ($L == null)", entityImplNameStr)
-                            .beginControlFlow("synchronized($T.class)", producerMetacodeClassName)
-                            .beginControlFlow("if ($L == null)", entityImplNameStr)
-                            .addStatement("$L = new $T(getScope())", entityImplNameStr, metaProducerImplMetacodeClassName)
+                            .addStatement("$T result = $L", producerMetacodeClassName, entityImplNameStr)
+                            .beginControlFlow("if (result == null)")
+                            .beginControlFlow("synchronized (this)")
+                            .addStatement("result = $L", entityImplNameStr)
+                            .beginControlFlow("if (result == null)")
+                            .addStatement("result = new $T(getScope())", metaProducerImplMetacodeClassName)
+                            .addStatement("$L = result", entityImplNameStr)
                             .endControlFlow()
                             .endControlFlow()
                             .endControlFlow()
-                            .addStatement("return $L", entityImplNameStr)
+                            .addStatement("return result")
                             .build());
 
             TypeSpec.Builder interfaceBuilder = TypeSpec.interfaceBuilder(metaProducerNameStr)
@@ -252,6 +287,7 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
                     constructors.add((ExecutableElement) subElement);
             }
 
+            boolean hasNoArgsConstructor = false;
             for (ExecutableElement constructor : constructors) {
                 List<ParameterSpec> params = new ArrayList<>();
                 for (VariableElement input : constructor.getParameters()) {
@@ -262,28 +298,118 @@ public class ScopeProcessor extends AbstractLookupScopeProcessor {
                     }
                 }
 
+                if (params.isEmpty())
+                    hasNoArgsConstructor = true;
                 interfaceBuilder.addMethod(MethodSpec.methodBuilder("getInstance")
                         .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
                         .returns(ofClassName).addParameters(params).build());
             }
 
-            getMetaProducerMethodBuilder
-                    .beginControlFlow("if (entityClass == $T.class)", ofClassName)
-                    .addStatement("return (MetaProducer<? extends E>) $L()", metaProducerImplMethodName)
-                    .endControlFlow();
+            int index = entityImplFieldIndex - 1;
+            getterMethodBuilder
+                    .addCode("case $L:\n", index)
+                    .addStatement("$>return impl.$L()$<", metaProducerImplMethodName);
+
+            // singletons created with no arguments can be warmed up, see SingletonWarmUp
+            if (entityElement.getAnnotation(Producer.class).singleton() &&
+                    !entityElement.getKind().isInterface() && hasNoArgsConstructor) {
+                instanceCasesBuilder
+                        .add("case $L:\n", index)
+                        .addStatement("$>return impl.$L().getInstance()$<", metaProducerImplMethodName);
+
+                CodeBlock.Builder dependenciesBuilder = CodeBlock.builder();
+                for (ClassName dependency : getInjectedEntities(ofTypeStr))
+                    dependenciesBuilder.add(", $T.class", dependency);
+                tableEntriesBuilder.add("\n.putSingleton($T.class, $L$L)", ofClassName, index, dependenciesBuilder.build());
+
+            } else {
+                tableEntriesBuilder.add("\n.put($T.class, $L)", ofClassName, index);
+            }
 
             builder.addType(interfaceBuilder.build());
         }
 
+        getterMethodBuilder
+                .addCode("default:\n")
+                .addStatement("$>throw new $T(\"Unknown entity index \" + index)$<", IllegalArgumentException.class)
+                .endControlFlow();
+        CodeBlock instanceCases = instanceCasesBuilder.build();
+        if (instanceCases.isEmpty()) {
+            instanceMethodBuilder
+                    .addStatement("throw new $T(\"Not a singleton index \" + index)", IllegalArgumentException.class);
+
+        } else {
+            instanceMethodBuilder
+                    .addStatement("$L<?> impl = ($L<?>) metaScope", metaScopeSimpleNameStr, metaScopeSimpleNameStr)
+                    .beginControlFlow("switch (index)")
+                    .addCode(instanceCases)
+                    .addCode("default:\n")
+                    .addStatement("$>throw new $T(\"Not a singleton index \" + index)$<", IllegalArgumentException.class)
+                    .endControlFlow();
+        }
+        TypeSpec getterTypeSpec = TypeSpec.anonymousClassBuilder("")
+                .addSuperinterface(ClassName.get(MetaProducerTable.Getter.class))
+                .addMethod(getterMethodBuilder.build())
+                .addMethod(instanceMethodBuilder.build())
+                .build();
+
         metaScopeTypeSpecBuilder
+                .addField(FieldSpec.builder(metaProducerTableClassName, "META_PRODUCERS",
+                        Modifier.PROTECTED, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T($L, $L, $L)$L", metaProducerTableClassName,
+                                metaScopeExtClassName == null ? "null" : CodeBlock.builder()
+                                        .add("$T.META_PRODUCERS", metaScopeExtClassName).build(),
+                                entityImplFieldIndex, getterTypeSpec, tableEntriesBuilder.build())
+                        .build())
                 .addMethod(metaScopeConstructorBuilder.build())
-                .addMethod(getMetaProducerMethodBuilder
-                        .addStatement("return " + (scopeExtClassStr == null ? "null" : "super.getMetaProducer(entityClass)"))
+                .addMethod(getMetaProducerMethodBuilder.build())
+                .addMethod(MethodSpec.methodBuilder("getMetaProducerTable")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(metaProducerTableClassName)
+                        .addStatement("return META_PRODUCERS")
                         .build());
         builder.addType(metaScopeTypeSpecBuilder.build());
         return false;
     }
 
+    /**
+     * Entities injected into the fields of the entity, it's created after them on warming up
+     */
+    private List<ClassName> getInjectedEntities(String ofTypeStr) {
+        ProcessingEnvironment env = processingContext.processingEnv();
+        Elements elementUtils = env.getElementUtils();
+        if (allEntityTypes == null) {
+            allEntityTypes = new HashSet<>();
+            for (Element producer : allProducers) {
+                String typeStr = MetacodeUtils.getAnnotationValueAsString(producer, Producer.class, "of", elementUtils);
+                allEntityTypes.add(typeStr != null ? typeStr : ((TypeElement) producer).getQualifiedName().toString());
+            }
+        }
+
+        List<ClassName> result = new ArrayList<>();
+        TypeElement ofElement = elementUtils.getTypeElement(ofTypeStr);
+        if (ofElement == null)
+            return result;
+
+        for (VariableElement field : ElementFilter.fieldsIn(elementUtils.getAllMembers(ofElement))) {
+            boolean injected = false;
+            for (AnnotationMirror annotationMirror : field.getAnnotationMirrors()) {
+                String annotationStr = annotationMirror.getAnnotationType().toString();
+                if (annotationStr.equals(Inject.class.getName()) || annotationStr.equals("javax.inject.Inject")) {
+                    injected = true;
+                    break;
+                }
+            }
+
+            // Provider and Lazy are not created with the entity
+            String typeStr = env.getTypeUtils().erasure(field.asType()).toString();
+            if (injected && !typeStr.equals(ofTypeStr) && allEntityTypes.contains(typeStr))
+                result.add(ClassName.bestGuess(typeStr));
+        }
+        return result;
+    }
+
     private Set<? extends Element> getScopeEntities(final String scopeClassStr, final boolean isDefaultScope) {
         return Sets.filter(allProducers, new Predicate<Element>() {
             public boolean apply(Element input) {
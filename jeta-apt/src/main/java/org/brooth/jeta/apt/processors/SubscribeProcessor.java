@@ -17,15 +17,15 @@
 package org.brooth.jeta.apt.processors;
 
 import com.google.common.base.Joiner;
+import com.google.common.primitives.Ints;
 import com.squareup.javapoet.*;
 import org.brooth.jeta.apt.MetacodeUtils;
 import org.brooth.jeta.apt.RoundContext;
 import org.brooth.jeta.eventbus.*;
-import org.brooth.jeta.observer.EventObserver;
 
 import javax.lang.model.element.*;
 import javax.lang.model.util.Elements;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author Oleg Khalidov (brooth@gmail.com)
@@ -49,9 +49,14 @@ public class SubscribeProcessor extends AbstractProcessor {
                 .returns(handlerClassName)
                 .addParameter(busClassName, "bus")
                 .addParameter(masterClassName, "master", Modifier.FINAL)
-                .addStatement("$T handler = new $T()", handlerClassName, handlerClassName);
+                .addStatement("$T handler = new $T()", handlerClassName, handlerClassName)
+                // the buses implemented before the routing get the subscribers filtering the events
+                .addStatement("$T routing = $T.of(bus)", ClassName.get(RoutingEventBus.class),
+                        ClassName.get(EventBusAdapter.class))
+                .beginControlFlow("try");
 
-        Elements elementUtils = processingContext.processingEnv().getElementUtils();
+        Map<String, String> filterFields = new HashMap<>();
+        int infoIndex = 0;
 
         for (Element element : context.elements()) {
             final Subscribe annotation = element.getAnnotation(Subscribe.class);
@@ -59,86 +64,218 @@ public class SubscribeProcessor extends AbstractProcessor {
             if (params.size() != 1)
                 throw new IllegalArgumentException("Subscriber method must have one parameter (event)");
             TypeName eventTypeName = TypeName.get(params.get(0).asType());
-            if (eventTypeName instanceof ParameterizedTypeName)
-                eventTypeName = ((ParameterizedTypeName) eventTypeName).rawType;
+            // batch subscriber takes List<Event>
+            boolean batch = false;
+            if (eventTypeName instanceof ParameterizedTypeName) {
+                ParameterizedTypeName parameterizedTypeName = (ParameterizedTypeName) eventTypeName;
+                eventTypeName = parameterizedTypeName.rawType;
+                if (eventTypeName.equals(ClassName.get(List.class))) {
+                    batch = true;
+                    eventTypeName = parameterizedTypeName.typeArguments.get(0);
+                    if (eventTypeName instanceof ParameterizedTypeName)
+                        eventTypeName = ((ParameterizedTypeName) eventTypeName).rawType;
+                    if (!(eventTypeName instanceof ClassName))
+                        throw new IllegalArgumentException("Batch subscriber method must take List of events, e.g. List<MyMessage>");
+                }
+            }
 
+            // master is passed to the observer, so the bus can hold it weakly
+            String onEventMethodNameStr = element.getSimpleName().toString();
             MethodSpec.Builder onEventMethodBuilder = MethodSpec.methodBuilder("onEvent")
                     .addAnnotation(Override.class)
-                    .addModifiers(Modifier.PUBLIC)
+                    .addModifiers(Modifier.PROTECTED)
+                    .addParameter(masterClassName, "master")
                     .addParameter(eventTypeName, "event")
                     .returns(void.class);
 
-            // IdsFilter
-            if (annotation.id().length > 0) {
-                String[] ids = new String[annotation.id().length];
-                for (int i = 0; i < ids.length; i++)
-                    ids[i] = String.valueOf(annotation.id()[i]);
-
-                onEventMethodBuilder
-                        .beginControlFlow("if(!(new $T($L).accepts(null, null, event)))",
-                                TypeName.get(IdsFilter.class), Joiner.on(", ").join(ids))
-                        .addStatement("return")
-                        .endControlFlow();
-            }
-            // TopicsFilter
-            if (annotation.topic().length > 0) {
-                onEventMethodBuilder
-                        .beginControlFlow("if(!(new $T($L).accepts(null, null, event)))",
-                                TypeName.get(TopicsFilter.class), '"' + Joiner.on("\", \"").join(annotation.topic()) + '"')
-                        .addStatement("return")
-                        .endControlFlow();
-            }
+            TypeSpec eventObserverTypeSpec;
+            if (!batch) {
+                addFilters(onEventMethodBuilder, builder, element, annotation, filterFields, "return");
+                MethodSpec onEventMethodSpec = onEventMethodBuilder
+                        .addStatement("master.$N(event)", onEventMethodNameStr)
+                        .build();
 
-            // Filters
-            String onEventMethodNameStr = element.getSimpleName().toString();
-            List<?> filterList = (List<?>) MetacodeUtils.getAnnotationValue(element, annotationElement, "filters");
-            if (filterList != null) {
-                for (Object filterStr : filterList) {
-                    String filter = filterStr.toString().replace(".class", "");
-                    TypeElement filterTypeElement = elementUtils.getTypeElement(filter);
-                    if (filterTypeElement.getKind() == ElementKind.CLASS) {
-                        onEventMethodBuilder
-                                .beginControlFlow("if(!(new $T().accepts(master, \"$L\", event)))",
-                                        ClassName.bestGuess(filter), onEventMethodNameStr)
-                                .addStatement("return")
-                                .endControlFlow();
-
-                    } else {
-                        MetaFilter metaFilter = filterTypeElement.getAnnotation(MetaFilter.class);
-                        if (metaFilter == null)
-                            throw new IllegalArgumentException("Not valid Filter usage. '" + filter
-                                    + "' must be implementation of Filter"
-                                    + " or interface annotated with MetaFilter");
-
-                        String expression = metaFilter.emitExpression()
-                                .replaceAll("\\$m", "master")
-                                .replaceAll("\\$e", "event");
-
-                        onEventMethodBuilder
-                                .beginControlFlow("if(!($L))", expression)
-                                .addStatement("return")
-                                .endControlFlow();
-                    }
+                eventObserverTypeSpec = TypeSpec.anonymousClassBuilder("master")
+                        .superclass(ParameterizedTypeName.get(
+                                ClassName.get(SubscriberObserver.class), masterClassName, eventTypeName))
+                        .addMethod(onEventMethodSpec)
+                        .build();
+
+            } else {
+                TypeName listTypeName = ParameterizedTypeName.get(ClassName.get(List.class), eventTypeName);
+                MethodSpec.Builder onEventsMethodBuilder = MethodSpec.methodBuilder("onEvents")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .addParameter(masterClassName, "master")
+                        .addParameter(listTypeName, "events")
+                        .returns(void.class);
+
+                // filters go to accepts(event), so the batch can be filtered event by event
+                MethodSpec.Builder acceptsMethodBuilder = MethodSpec.methodBuilder("accepts")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(masterClassName, "master")
+                        .addParameter(eventTypeName, "event")
+                        .returns(boolean.class);
+                boolean filtered = addFilters(acceptsMethodBuilder, builder, element, annotation, filterFields, "return false");
+
+                if (filtered) {
+                    onEventMethodBuilder
+                            .beginControlFlow("if (accepts(master, event))")
+                            .addStatement("master.$N($T.singletonList(event))", onEventMethodNameStr, ClassName.get(Collections.class))
+                            .endControlFlow();
+                    onEventsMethodBuilder
+                            .addStatement("$T accepted = null", listTypeName)
+                            .beginControlFlow("for ($T event : events)", eventTypeName)
+                            .beginControlFlow("if (accepts(master, event))")
+                            .beginControlFlow("if (accepted == null)")
+                            .addStatement("accepted = new $T<>(events.size())", ClassName.get(ArrayList.class))
+                            .endControlFlow()
+                            .addStatement("accepted.add(event)")
+                            .endControlFlow()
+                            .endControlFlow()
+                            .beginControlFlow("if (accepted != null)")
+                            .addStatement("master.$N($T.unmodifiableList(accepted))", onEventMethodNameStr,
+                                    ClassName.get(Collections.class))
+                            .endControlFlow();
+
+                } else {
+                    onEventMethodBuilder.addStatement("master.$N($T.singletonList(event))",
+                            onEventMethodNameStr, ClassName.get(Collections.class));
+                    onEventsMethodBuilder.addStatement("master.$N(events)", onEventMethodNameStr);
                 }
+
+                TypeSpec.Builder eventObserverTypeBuilder = TypeSpec.anonymousClassBuilder("master")
+                        .superclass(ParameterizedTypeName.get(
+                                ClassName.get(BatchSubscriberObserver.class), masterClassName, eventTypeName))
+                        .addMethod(onEventMethodBuilder.build())
+                        .addMethod(onEventsMethodBuilder.build());
+                if (filtered)
+                    eventObserverTypeBuilder.addMethod(acceptsMethodBuilder.addStatement("return true").build());
+                eventObserverTypeSpec = eventObserverTypeBuilder.build();
             }
 
-            MethodSpec onEventMethodSpec = onEventMethodBuilder
-                    .addStatement("master.$N(event)", onEventMethodNameStr)
-                    .build();
+            // created once, the bus routes the events by its ids and topics
+            CodeBlock.Builder infoBuilder = CodeBlock.builder()
+                    .add("new $T($T.class, $S, $L, ", ClassName.get(SubscriberInfo.class),
+                            masterClassName, onEventMethodNameStr, annotation.priority());
+            if (annotation.id().length == 0)
+                infoBuilder.add("null, ");
+            else
+                infoBuilder.add("new int[] {$L}, ", Joiner.on(", ").join(Ints.asList(annotation.id())));
+            if (annotation.topic().length == 0) {
+                infoBuilder.add("null");
+            } else {
+                infoBuilder.add("new String[] {");
+                for (int i = 0; i < annotation.topic().length; i++)
+                    infoBuilder.add(i == 0 ? "$S" : ", $S", annotation.topic()[i]);
+                infoBuilder.add("}");
+            }
+            infoBuilder.add(annotation.weak() ? ", true)" : ")");
 
-            TypeSpec eventObserverTypeSpec = TypeSpec.anonymousClassBuilder("")
-                    .addSuperinterface(ParameterizedTypeName.get(
-                            ClassName.get(EventObserver.class), eventTypeName))
-                    .addMethod(onEventMethodSpec)
-                    .build();
+            String infoField = "SUBSCRIBER_" + infoIndex++;
+            builder.addField(FieldSpec.builder(ClassName.get(SubscriberInfo.class), infoField)
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer(infoBuilder.build())
+                    .build());
 
-            methodBuilder.addStatement("handler.add($T.class,\nbus.register($T.class, $L, $L))",
-                    eventTypeName, eventTypeName, eventObserverTypeSpec, annotation.priority());
+            methodBuilder.addStatement("handler.add($T.class,\nrouting.register($T.class, $L, $L))",
+                    eventTypeName, eventTypeName, eventObserverTypeSpec, infoField);
         }
 
-        methodBuilder.addStatement("return handler");
+        // none or all, a sticky event may fail the registering
+        methodBuilder
+                .nextControlFlow("catch ($T e)", RuntimeException.class)
+                .addStatement("handler.unregisterAll()")
+                .addStatement("throw e")
+                .endControlFlow()
+                .addStatement("return handler");
         builder.addMethod(methodBuilder.build());
 
         return false;
     }
+
+    /**
+     * @param reject statement the method returns with if the event isn't accepted
+     * @return false if there are no filters
+     */
+    private boolean addFilters(MethodSpec.Builder methodBuilder, TypeSpec.Builder builder, Element element,
+                               Subscribe annotation, Map<String, String> filterFields, String reject) {
+        // ids, switch doesn't allocate
+        if (annotation.id().length > 0) {
+            methodBuilder.beginControlFlow("switch (event.id())");
+            // duplicated case labels don't compile
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (int id : annotation.id())
+                ids.add(id);
+            for (int id : ids)
+                methodBuilder.addCode("case $L:\n", id);
+            methodBuilder
+                    .addStatement("$>break$<")
+                    .addCode("default:\n")
+                    .addStatement("$>$L$<", reject)
+                    .endControlFlow();
+        }
+        // topics, string switch goes through hash code
+        if (annotation.topic().length > 0) {
+            methodBuilder
+                    .beginControlFlow("if (event.topic() == null)")
+                    .addStatement(reject)
+                    .endControlFlow()
+                    .beginControlFlow("switch (event.topic())");
+            for (String topic : new LinkedHashSet<>(Arrays.asList(annotation.topic())))
+                methodBuilder.addCode("case $S:\n", topic);
+            methodBuilder
+                    .addStatement("$>break$<")
+                    .addCode("default:\n")
+                    .addStatement("$>$L$<", reject)
+                    .endControlFlow();
+        }
+
+        // Filters
+        String onEventMethodNameStr = element.getSimpleName().toString();
+        Elements elementUtils = processingContext.processingEnv().getElementUtils();
+        List<?> filterList = (List<?>) MetacodeUtils.getAnnotationValue(element, annotationElement, "filters");
+        if (filterList != null) {
+            for (Object filterStr : filterList) {
+                String filter = filterStr.toString().replace(".class", "");
+                TypeElement filterTypeElement = elementUtils.getTypeElement(filter);
+                if (filterTypeElement.getKind() == ElementKind.CLASS) {
+                    // one instance per metacode class, created with it
+                    String filterField = filterFields.get(filter);
+                    if (filterField == null) {
+                        filterField = "FILTER_" + filterFields.size();
+                        filterFields.put(filter, filterField);
+                        builder.addField(FieldSpec.builder(ClassName.bestGuess(filter), filterField)
+                                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                .initializer("new $T()", ClassName.bestGuess(filter))
+                                .build());
+                    }
+
+                    methodBuilder
+                            .beginControlFlow("if(!($L.accepts(master, \"$L\", event)))",
+                                    filterField, onEventMethodNameStr)
+                            .addStatement(reject)
+                            .endControlFlow();
+
+                } else {
+                    MetaFilter metaFilter = filterTypeElement.getAnnotation(MetaFilter.class);
+                    if (metaFilter == null)
+                        throw new IllegalArgumentException("Not valid Filter usage. '" + filter
+                                + "' must be implementation of Filter"
+                                + " or interface annotated with MetaFilter");
+
+                    String expression = metaFilter.emitExpression()
+                            .replaceAll("\\$m", "master")
+                            .replaceAll("\\$e", "event");
+
+                    methodBuilder
+                            .beginControlFlow("if(!($L))", expression)
+                            .addStatement(reject)
+                            .endControlFlow();
+                }
+            }
+        }
+
+        return annotation.id().length > 0 || annotation.topic().length > 0 || (filterList != null && !filterList.isEmpty());
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.benchmarks.eventbus;
+
+import org.brooth.jeta.eventbus.BaseEventBus;
+import org.brooth.jeta.eventbus.BaseMessage;
+import org.brooth.jeta.eventbus.BatchEventObserver;
+import org.brooth.jeta.observer.EventObserver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of events published one by one against publishAll, to plain and to batch subscribers.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchPublishBenchmark {
+
+    @Param({"100", "10000"})
+    private int batchSize;
+
+    @Param({"1", "8"})
+    private int subscribers;
+
+    private BaseEventBus bus;
+    private BaseEventBus batchBus;
+    private List<BaseMessage> events;
+    private BaseMessage[] eventsArray;
+
+    private long delivered;
+
+    @Setup
+    public void setup() {
+        bus = new BaseEventBus();
+        batchBus = new BaseEventBus();
+        for (int i = 0; i < subscribers; i++) {
+            bus.register(BaseMessage.class, new EventObserver<BaseMessage>() {
+                public void onEvent(BaseMessage event) {
+                    delivered += event.id();
+                }
+            }, 0);
+            batchBus.register(BaseMessage.class, new BatchEventObserver<BaseMessage>() {
+                public void onEvent(BaseMessage event) {
+                    delivered += event.id();
+                }
+
+                public void onEvents(List<BaseMessage> events) {
+                    for (int i = 0; i < events.size(); i++)
+                        delivered += events.get(i).id();
+                }
+            }, 0);
+        }
+
+        events = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++)
+            events.add(new BaseMessage(i, "tick"));
+        eventsArray = events.toArray(new BaseMessage[batchSize]);
+    }
+
+    @Benchmark
+    public long publish() {
+        for (BaseMessage event : events)
+            bus.publish(event);
+        return delivered;
+    }
+
+    @Benchmark
+    public long publishAll() {
+        bus.publishAll(events);
+        return delivered;
+    }
+
+    @Benchmark
+    public long publishAllArray() {
+        bus.publishAll(eventsArray);
+        return delivered;
+    }
+
+    @Benchmark
+    public long publishAllBatchSubscribers() {
+        batchBus.publishAll(events);
+        return delivered;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.benchmarks.eventbus;
+
+import org.brooth.jeta.eventbus.*;
+import org.brooth.jeta.observer.EventObserver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscriber's onEvent as SubscribeProcessor used to generate it (filters created per event,
+ * linear topics scan) against the current one (switch on id and topic, filter created once).
+ * Written by hand after the generated code of
+ * '@Subscribe(id = {1, 2, 3, 4}, topic = {"alpha", "beta", "gamma", "delta"}, filters = EvenIdFilter.class)'.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriberFilterBenchmark {
+
+    public static class EvenIdFilter implements Filter<Object, Message> {
+        public boolean accepts(Object master, String methodName, Message msg) {
+            return msg.id() % 2 == 0;
+        }
+    }
+
+    private static final EvenIdFilter FILTER_0 = new EvenIdFilter();
+
+    private final Object master = new Object();
+    private int delivered;
+
+    private EventObserver<Message> old;
+    private EventObserver<Message> current;
+
+    // accepted, rejected by topic, rejected by id
+    private Message[] events;
+    private int index;
+
+    @Setup
+    public void setup() {
+        old = new EventObserver<Message>() {
+            public void onEvent(Message event) {
+                if (!(new IdsFilter(1, 2, 3, 4).accepts(null, null, event)))
+                    return;
+                if (!(new TopicsFilter("alpha", "beta", "gamma", "delta").accepts(null, null, event)))
+                    return;
+                if (!(new EvenIdFilter().accepts(master, "onEvent", event)))
+                    return;
+                delivered++;
+            }
+        };
+
+        current = new EventObserver<Message>() {
+            public void onEvent(Message event) {
+                switch (event.id()) {
+                    case 1:
+                    case 2:
+                    case 3:
+                    case 4:
+                        break;
+                    default:
+                        return;
+                }
+                if (event.topic() == null)
+                    return;
+                switch (event.topic()) {
+                    case "alpha":
+                    case "beta":
+                    case "gamma":
+                    case "delta":
+                        break;
+                    default:
+                        return;
+                }
+                if (!(FILTER_0.accepts(master, "onEvent", event)))
+                    return;
+                delivered++;
+            }
+        };
+
+        // topics are built at runtime, so they are not the interned literals
+        events = new Message[]{
+                new BaseMessage(2, new StringBuilder("del").append("ta").toString()),
+                new BaseMessage(4, new StringBuilder("ome").append("ga").toString()),
+                new BaseMessage(7, new StringBuilder("al").append("pha").toString())
+        };
+    }
+
+    @Benchmark
+    public int oldGenerated() {
+        old.onEvent(next());
+        return delivered;
+    }
+
+    @Benchmark
+    public int currentGenerated() {
+        current.onEvent(next());
+        return delivered;
+    }
+
+    private Message next() {
+        Message event = events[index];
+        index = index == events.length - 1 ? 0 : index + 1;
+        return event;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.benchmarks.metasitory;
+
+import org.brooth.jeta.Metacode;
+import org.brooth.jeta.Provider;
+import org.brooth.jeta.eventbus.Subscribe;
+import org.brooth.jeta.inject.Inject;
+import org.brooth.jeta.log.Log;
+import org.brooth.jeta.metasitory.Criteria;
+import org.brooth.jeta.metasitory.IndexedMapMetasitory;
+import org.brooth.jeta.metasitory.MapMetasitory;
+import org.brooth.jeta.metasitory.MapMetasitoryContainer;
+import org.brooth.jeta.metasitory.Metasitory;
+import org.brooth.jeta.observer.Subject;
+import org.brooth.jeta.util.Implementation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Metasitory search under 1 to 64 reader threads. 'locked' is a baseline, same search guarded
+ * by a read lock, as MapMetasitory did before it moved to snapshots.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class MetasitorySearchBenchmark {
+
+    private static final Class<?>[] MASTERS = {
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class, ArrayDeque.class, PriorityQueue.class,
+            IdentityHashMap.class, WeakHashMap.class, EnumMap.class, Vector.class, Stack.class,
+            Hashtable.class, Properties.class, BitSet.class, Random.class, Scanner.class,
+            StringBuilder.class, StringBuffer.class, Thread.class, ThreadGroup.class, ThreadLocal.class,
+            InheritableThreadLocal.class, Integer.class, Long.class, Short.class, Byte.class,
+            Double.class, Float.class, Character.class, Boolean.class, String.class,
+            Number.class, Exception.class, RuntimeException.class, IllegalStateException.class,
+            IllegalArgumentException.class, NumberFormatException.class, UnsupportedOperationException.class,
+            AbstractList.class, AbstractMap.class, AbstractSet.class, AbstractQueue.class, AbstractCollection.class,
+            AbstractSequentialList.class, Date.class, Locale.class, UUID.class, Timer.class, TimerTask.class
+    };
+
+    private static final Class<?>[] ANNOTATIONS = {
+            Inject.class, Log.class, Subject.class, Subscribe.class, Implementation.class
+    };
+
+    private Metasitory map;
+    private Metasitory indexed;
+    private final Lock readLock = new ReentrantReadWriteLock().readLock();
+
+    private Criteria deepCriteria;
+    private Criteria usesAnyCriteria;
+
+    @Setup
+    public void setup() {
+        MapMetasitoryContainer container = new MapMetasitoryContainer() {
+            public Map<Class<?>, Context> get() {
+                Map<Class<?>, Context> result = new IdentityHashMap<>();
+                for (int i = 0; i < MASTERS.length; i++) {
+                    final Class<?> master = MASTERS[i];
+                    result.put(master, new Context(master, new Provider<Metacode<?>>() {
+                        public Metacode<?> get() {
+                            return new BenchmarkMetacode(master);
+                        }
+                    }, new Class<?>[]{ANNOTATIONS[i % ANNOTATIONS.length], ANNOTATIONS[(i + 1) % ANNOTATIONS.length]}));
+                }
+                return result;
+            }
+        };
+
+        map = new MapMetasitory(container);
+        indexed = new IndexedMapMetasitory(container);
+
+        deepCriteria = new Criteria.Builder().masterEqDeep(LinkedHashMap.class).usesAny(Inject.class).usesAny(Log.class).build();
+        usesAnyCriteria = new Criteria.Builder().usesAny(Implementation.class).build();
+    }
+
+    @Benchmark
+    public Collection<Metacode<?>> mapDeep() {
+        return map.search(deepCriteria);
+    }
+
+    @Benchmark
+    public Collection<Metacode<?>> indexedDeep() {
+        return indexed.search(deepCriteria);
+    }
+
+    @Benchmark
+    public Collection<Metacode<?>> lockedDeep() {
+        readLock.lock();
+        try {
+            return map.search(deepCriteria);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Benchmark
+    public Collection<Metacode<?>> mapUsesAny() {
+        return map.search(usesAnyCriteria);
+    }
+
+    @Benchmark
+    public Collection<Metacode<?>> indexedUsesAny() {
+        return indexed.search(usesAnyCriteria);
+    }
+
+    @Threads(1)
+    public static class Threads1 extends MetasitorySearchBenchmark {
+    }
+
+    @Threads(4)
+    public static class Threads4 extends MetasitorySearchBenchmark {
+    }
+
+    @Threads(16)
+    public static class Threads16 extends MetasitorySearchBenchmark {
+    }
+
+    @Threads(64)
+    public static class Threads64 extends MetasitorySearchBenchmark {
+    }
+
+    private static class BenchmarkMetacode implements Metacode<Object> {
+        private final Class<?> masterClass;
+
+        private BenchmarkMetacode(Class<?> masterClass) {
+            this.masterClass = masterClass;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Class<Object> getMasterClass() {
+            return (Class<Object>) masterClass;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.benchmarks.observer;
+
+import org.brooth.jeta.observer.ArrayObservers;
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.Observers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notifying through the copy-on-write list of Observers against the array snapshot of ArrayObservers.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObserversNotifyBenchmark {
+
+    @Param({"1", "10", "1000"})
+    public int observersCount;
+
+    private final Observers<Object> list = new Observers<>();
+    private final Observers<Object> array = new ArrayObservers<>();
+    private final Object event = new Object();
+    private int delivered;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < observersCount; i++) {
+            EventObserver<Object> observer = new EventObserver<Object>() {
+                public void onEvent(Object event) {
+                    delivered++;
+                }
+            };
+            list.register(observer);
+            array.register(observer);
+        }
+    }
+
+    @Benchmark
+    public int listNotify() {
+        list.notify(event);
+        return delivered;
+    }
+
+    @Benchmark
+    public int arrayNotify() {
+        array.notify(event);
+        return delivered;
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.EventObserver;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Delivers events on the executor. Each subscriber has its own bounded queue that is drained by one task
+ * at a time, so a subscriber receives the events in the order they were published, while a slow subscriber
+ * holds up neither the publisher nor the others. Priority defines the order the events are queued in,
+ * the subscribers themselves run concurrently. Events queued before the subscriber is unregistered
+ * are still delivered. A subscriber's failures (see {@link #getErrors()}) are reported with its mailbox,
+ * the observer the bus registers instead of the subscriber.
+ * <p>
+ * Any executor fits, e.g. a fixed thread pool, or a virtual thread per task executor where the platform has one.
+ * <p>
+ * In conflating mode an event that comes while an event with the same key (see {@link #conflationKey(Message)})
+ * is still queued for the subscriber replaces that one, in its place in the queue. So a subscriber that can't
+ * keep up gets the latest values only, and the queue holds no more than one event per key.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class AsyncEventBus extends BaseEventBus {
+
+    /**
+     * What a publisher does if a subscriber's queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * wait for the space in the queue. A subscriber can't wait for its own queue, publishing to itself
+         * while it's full throws IllegalStateException
+         */
+        BLOCK,
+        /**
+         * drop the event for this subscriber
+         */
+        DROP,
+        /**
+         * deliver the queued events and this one on the publisher's thread. If the queue is being
+         * drained at the moment, wait for the space as BLOCK does
+         */
+        CALLER_RUNS
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // events a task delivers before it gives the thread to other subscribers
+    private static final int DRAIN_BATCH = 64;
+
+    protected final Executor executor;
+    protected final int capacity;
+    protected final OverflowPolicy policy;
+    protected final boolean conflating;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    // conflation key of the event being published on the thread, null if not conflating
+    private final ThreadLocal<PublishedKey> publishedKey;
+
+    public AsyncEventBus(Executor executor) {
+        this(executor, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, false);
+    }
+
+    public AsyncEventBus(Executor executor, int capacity, OverflowPolicy policy) {
+        this(executor, capacity, policy, false);
+    }
+
+    public AsyncEventBus(Executor executor, int capacity, OverflowPolicy policy, boolean hierarchical) {
+        this(executor, capacity, policy, hierarchical, false);
+    }
+
+    public AsyncEventBus(Executor executor, int capacity, OverflowPolicy policy, boolean hierarchical, boolean conflating) {
+        super(hierarchical);
+        assert executor != null;
+        assert policy != null;
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.conflating = conflating;
+        this.publishedKey = conflating ? new ThreadLocal<PublishedKey>() {
+            @Override
+            protected PublishedKey initialValue() {
+                return new PublishedKey();
+            }
+        } : null;
+    }
+
+    /**
+     * In conflating mode the key is computed once, for all the subscribers
+     */
+    @Override
+    public <E extends Message> void publish(E event) {
+        if (publishedKey == null) {
+            super.publish(event);
+            return;
+        }
+
+        assert event != null;
+        // a subscriber run by the publisher may publish too
+        PublishedKey published = publishedKey.get();
+        Message outerEvent = published.event;
+        Object outerKey = published.key;
+        published.event = event;
+        published.key = conflationKey(event);
+        try {
+            super.publish(event);
+        } finally {
+            published.event = outerEvent;
+            published.key = outerKey;
+        }
+    }
+
+    /**
+     * In conflating mode the events are published one by one, each key is computed once
+     */
+    @Override
+    public <E extends Message> void publishAll(Collection<E> events) {
+        if (publishedKey == null) {
+            super.publishAll(events);
+            return;
+        }
+
+        assert events != null;
+        for (E event : events)
+            publish(event);
+    }
+
+    @Override
+    protected <E extends Message> EventObserver<E> decorate(EventObserver<E> observer, SubscriberInfo info) {
+        return new Mailbox<E>(observer, info);
+    }
+
+    /**
+     * Subscribers are timed by their mailboxes, not on publish
+     */
+    @Override
+    protected boolean isDeliveredOnPublish() {
+        return false;
+    }
+
+    /**
+     * Events with equal keys are conflated, events with null key never are. By default it's the class
+     * and the topic, or the id if there's no topic. Override to conflate some of the event types only.
+     */
+    protected Object conflationKey(Message event) {
+        return new ConflationKey(event.getClass(), event.topic(), event.id());
+    }
+
+    /**
+     * events queued, but not delivered yet, all the subscribers in total
+     */
+    public long getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * average time from publishing to the start of delivering
+     */
+    public long getAverageLatencyNanos() {
+        long count = dispatched.get();
+        return count == 0 ? 0 : latencyNanos.get() / count;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * events replaced by newer ones before they were delivered
+     */
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+    private void dispatched(long latency) {
+        dispatched.incrementAndGet();
+        latencyNanos.addAndGet(latency);
+
+        long max = maxLatencyNanos.get();
+        while (latency > max && !maxLatencyNanos.compareAndSet(max, latency))
+            max = maxLatencyNanos.get();
+    }
+
+    private final class Mailbox<E extends Message> implements EventObserver<E>, Runnable {
+        private final EventObserver<E> observer;
+        private final SubscriberInfo info;
+        private final BlockingQueue<Envelope<E>> queue = new LinkedBlockingQueue<>(capacity);
+        // true while a task (or a caller) drains the queue
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // the thread draining the queue. Not volatile, only that thread can find itself here
+        private Thread drainer;
+        // queued envelopes by conflation key, null if not conflating
+        private final ConcurrentHashMap<Object, Envelope<E>> pending;
+
+        private Mailbox(EventObserver<E> observer, SubscriberInfo info) {
+            this.observer = observer;
+            this.info = info;
+            this.pending = conflating ? new ConcurrentHashMap<Object, Envelope<E>>() : null;
+        }
+
+        public void onEvent(E event) {
+            Object key = null;
+            if (pending != null) {
+                key = keyOf(event);
+                if (key != null) {
+                    Envelope<E> queuedEnvelope = pending.get(key);
+                    if (queuedEnvelope != null && queuedEnvelope.replace(event)) {
+                        conflated.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+
+            Envelope<E> envelope = new Envelope<E>(event, key);
+            if (key != null)
+                pending.put(key, envelope);
+            // counted up front, so the depth never goes below zero if the event is drained at once
+            queued.incrementAndGet();
+            if (!queue.offer(envelope)) {
+                if (policy == OverflowPolicy.DROP) {
+                    drop(envelope);
+                    return;
+                }
+
+                if (policy == OverflowPolicy.CALLER_RUNS && draining.compareAndSet(false, true)) {
+                    queued.decrementAndGet();
+                    drainer = Thread.currentThread();
+                    try {
+                        drain(Integer.MAX_VALUE);
+                        deliver(envelope);
+                    } finally {
+                        release();
+                    }
+                    return;
+                }
+
+                // BLOCK, or CALLER_RUNS while the queue is being drained
+                if (drainer == Thread.currentThread()) {
+                    queued.decrementAndGet();
+                    take(envelope);
+                    throw new IllegalStateException("Subscriber's queue is full, it can't wait for itself");
+                }
+                try {
+                    queue.put(envelope);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(envelope);
+                    return;
+                }
+            }
+
+            schedule();
+        }
+
+        private void drop(Envelope<E> envelope) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            take(envelope);
+        }
+
+        /**
+         * Sticky events are delivered on registering, not published
+         */
+        private Object keyOf(E event) {
+            PublishedKey published = publishedKey.get();
+            return published.event == event ? published.key : conflationKey(event);
+        }
+
+        public void run() {
+            drainer = Thread.currentThread();
+            try {
+                drain(DRAIN_BATCH);
+            } finally {
+                release();
+            }
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    draining.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void release() {
+            drainer = null;
+            draining.set(false);
+            // an event might be queued after the last poll, but before the release
+            if (!queue.isEmpty())
+                schedule();
+        }
+
+        private void drain(int max) {
+            Envelope<E> envelope;
+            for (int i = 0; i < max && (envelope = queue.poll()) != null; i++) {
+                queued.decrementAndGet();
+                deliver(envelope);
+            }
+        }
+
+        private void deliver(Envelope<E> envelope) {
+            E event = take(envelope);
+            long start = System.nanoTime();
+            dispatched(start - envelope.nanoTime);
+
+            EventBusListener listener = getListener();
+            try {
+                observer.onEvent(event);
+
+            } catch (RuntimeException e) {
+                // thrown to the executor, the rest of the queue is delivered by the next task.
+                // Counted under the mailbox, it's what is registered, so unregistering drops the count
+                RuntimeException error = errors.onError(this, event, e, null);
+                if (error != null)
+                    throw error;
+            }
+            if (listener != null)
+                listener.onDelivered(info, 1, System.nanoTime() - start);
+        }
+
+        /**
+         * No event can be conflated into the envelope after that
+         */
+        private E take(Envelope<E> envelope) {
+            if (envelope.key == null)
+                return envelope.get();
+
+            E event = envelope.take();
+            pending.remove(envelope.key, envelope);
+            return event;
+        }
+    }
+
+    /**
+     * Event on its way to a subscriber. Conflated events replace the event, until it's taken for delivery
+     */
+    private static final class Envelope<E> {
+        private static final Object TAKEN = new Object();
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Envelope, Object> EVENT =
+                AtomicReferenceFieldUpdater.newUpdater(Envelope.class, Object.class, "event");
+
+        private volatile Object event;
+        private final Object key;
+        // of the first event, the latency includes the time it's been conflated
+        private final long nanoTime = System.nanoTime();
+
+        private Envelope(E event, Object key) {
+            this.event = event;
+            this.key = key;
+        }
+
+        private boolean replace(E newer) {
+            Object current;
+            while ((current = event) != TAKEN)
+                if (EVENT.compareAndSet(this, current, newer))
+                    return true;
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E get() {
+            return (E) event;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E take() {
+            return (E) EVENT.getAndSet(this, TAKEN);
+        }
+    }
+
+    private static final class PublishedKey {
+        private Message event;
+        private Object key;
+    }
+
+    private static final class ConflationKey {
+        private final Class<?> eventClass;
+        private final String topic;
+        private final int id;
+
+        private ConflationKey(Class<?> eventClass, String topic, int id) {
+            this.eventClass = eventClass;
+            this.topic = topic;
+            this.id = topic == null ? id : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof ConflationKey))
+                return false;
+
+            ConflationKey that = (ConflationKey) o;
+            return eventClass == that.eventClass && id == that.id
+                    && (topic == null ? that.topic == null : topic.equals(that.topic));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = eventClass.hashCode();
+            result = 31 * result + (topic == null ? 0 : topic.hashCode());
+            return 31 * result + id;
+        }
+    }
+}
@@ -17,41 +17,569 @@
 package org.brooth.jeta.eventbus;
 
 import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.ObserverErrors;
 import org.brooth.jeta.observer.Observers;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Events are routed by their topics and ids to the subscribers registered with those (see {@link SubscriberInfo}).
+ * <p>
+ * In hierarchical mode an event is delivered to the subscribers of its class, superclasses and interfaces.
+ * The merged, priority ordered subscribers are resolved once per event class and cached until
+ * any of the merged types gets a subscriber registered or unregistered.
+ * <p>
+ * Weak subscribers (see {@link Subscribe#weak()}) are removed once their masters are collected,
+ * all at once on the next publish or register.
+ * <p>
+ * Sticky events (see {@link #publishSticky(Message)}) are kept, the last one per event class and per topic,
+ * and delivered to a subscriber of that class as soon as it's registered. Subscribers with topics
+ * get the last event of each of their topics, the others - the last event of the class. A subscriber registered
+ * while the sticky event is being published gets it once, either from the publishing or on registering.
+ * If the subscriber fails on a sticky event (see {@link #getErrors()}), it's unregistered and the exception
+ * is thrown by register.
+ * <p>
+ * With a listener set (see {@link #setListener(EventBusListener)}) the bus reports the events nobody
+ * is subscribed to and times each subscriber, e.g. to {@link EventBusMetrics}. Without it, it costs
+ * a volatile read per publish.
+ * <p>
+ * If a subscriber throws, the bus fails fast by default, see {@link #getErrors()} for the other policies.
+ *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
-public class BaseEventBus implements EventBus {
+public class BaseEventBus implements RoutingEventBus {
 
     protected ConcurrentHashMap<Class<?>, Subscribers<?>> subscribersMap = new ConcurrentHashMap<Class<?>, Subscribers<?>>();
 
+    protected final boolean hierarchical;
+    protected final boolean weak;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private final ConcurrentHashMap<Class<?>, Sticky> stickyMap = new ConcurrentHashMap<Class<?>, Sticky>();
+    private volatile EventBusListener listener;
+    protected final ObserverErrors errors = new ObserverErrors();
+    private volatile Subscribers.Parallel parallel;
+    private final ConcurrentHashMap<Class<?>, Dispatch> dispatchMap = new ConcurrentHashMap<Class<?>, Dispatch>();
+
+    public BaseEventBus() {
+        this(false);
+    }
+
+    public BaseEventBus(boolean hierarchical) {
+        this(hierarchical, false);
+    }
+
+    /**
+     * @param weak hold the masters of all the subscribers weakly
+     */
+    public BaseEventBus(boolean hierarchical, boolean weak) {
+        this.hierarchical = hierarchical;
+        this.weak = weak;
+    }
+
     public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, int priority) {
+        return register(eventClass, observer, new SubscriberInfo(priority));
+    }
+
+    public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, SubscriberInfo info) {
         assert eventClass != null;
         assert observer != null;
+        assert info != null;
 
+        purge();
         @SuppressWarnings("unchecked")
-        Subscribers<E> subscribers = (Subscribers<E>) subscribersMap.get(eventClass);
-        if (subscribers == null) {
-            subscribers = new Subscribers<E>();
-            @SuppressWarnings("unchecked")
-            Subscribers<E> quicker = (Subscribers<E>) subscribersMap.putIfAbsent(eventClass, subscribers);
+        Subscribers<E> subscribers = (Subscribers<E>) subscribersOf(eventClass);
+        Subscribers.PriorityEventObserver<E> item;
+        if (!(weak || info.isWeak()) || !(observer instanceof SubscriberObserver)) {
+            item = new Subscribers.PriorityEventObserver<E>(decorate(observer, info), info, null);
+
+        } else {
+            SubscriberObserver<?, E> subscriberObserver = (SubscriberObserver<?, E>) observer;
+            MasterReference reference = new MasterReference(subscriberObserver.master(), collected, subscribers);
+            subscriberObserver.weaken(reference);
+            item = new Subscribers.PriorityEventObserver<E>(decorate(observer, info), info, reference);
+        }
+
+        Observers.Handler<E> handler = subscribers.register(item);
+        // collected and purged before it was added
+        if (item.master != null && item.master.get() == null)
+            subscribers.removeCleared();
+
+        if (!stickyMap.isEmpty()) {
+            try {
+                deliverSticky(eventClass, item, info);
+            } catch (RuntimeException e) {
+                // the caller gets no handler to unregister with
+                handler.unregister();
+                throw e;
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Publishes the event and keeps it, the last one of its class and of its topic, for the subscribers
+     * registered later. Costs a normal publish, plus a look-up of the event class' sticky events.
+     */
+    public <E extends Message> void publishSticky(E event) {
+        assert event != null;
+
+        Class<?> eventClass = event.getClass();
+        Sticky sticky = stickyMap.get(eventClass);
+        if (sticky == null) {
+            sticky = new Sticky();
+            Sticky quicker = stickyMap.putIfAbsent(eventClass, sticky);
             if (quicker != null)
-                subscribers = quicker;
+                sticky = quicker;
+        }
+
+        StickyEvent stickyEvent = new StickyEvent(event);
+        sticky.last = stickyEvent;
+        if (event.topic() != null)
+            sticky.topics.put(event.topic(), stickyEvent);
+
+        publish(event);
+    }
+
+    /**
+     * @return the last sticky event of the class, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Message> E getSticky(Class<E> eventClass) {
+        Sticky sticky = stickyMap.get(eventClass);
+        return sticky == null ? null : (E) eventOf(sticky.last);
+    }
+
+    /**
+     * @return the last sticky event of the class with the topic, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Message> E getSticky(Class<E> eventClass, String topic) {
+        assert topic != null;
+        Sticky sticky = stickyMap.get(eventClass);
+        return sticky == null ? null : (E) eventOf(sticky.topics.get(topic));
+    }
+
+    /**
+     * Forgets the sticky events of the class, all the topics
+     *
+     * @return the last one, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Message> E removeSticky(Class<E> eventClass) {
+        Sticky sticky = stickyMap.remove(eventClass);
+        return sticky == null ? null : (E) eventOf(sticky.last);
+    }
+
+    public void clearSticky() {
+        stickyMap.clear();
+    }
+
+    private static Message eventOf(StickyEvent stickyEvent) {
+        return stickyEvent == null ? null : stickyEvent.event;
+    }
+
+    /**
+     * Events published (not sticky) concurrently with the registering may come to the observer before
+     * the sticky one. Failures go through the error policy.
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends Message> void deliverSticky(Class<E> eventClass, Subscribers.PriorityEventObserver<E> item,
+                                                   SubscriberInfo info) {
+        Sticky sticky = stickyMap.get(eventClass);
+        if (sticky == null)
+            return;
+
+        RuntimeException first = null;
+        if (info.hasTopics()) {
+            for (String topic : info.topics()) {
+                StickyEvent stickyEvent = sticky.topics.get(topic);
+                if (stickyEvent != null && stickyEvent.claim(item))
+                    first = deliverSticky(item.observer, (E) stickyEvent.event, first);
+            }
+
+        } else {
+            StickyEvent stickyEvent = sticky.last;
+            if (stickyEvent != null && info.accepts(stickyEvent.event) && stickyEvent.claim(item))
+                first = deliverSticky(item.observer, (E) stickyEvent.event, first);
+        }
+
+        if (first != null)
+            throw first;
+    }
+
+    private <E extends Message> RuntimeException deliverSticky(EventObserver<E> observer, E event, RuntimeException first) {
+        try {
+            observer.onEvent(event);
+            return first;
+
+        } catch (RuntimeException e) {
+            return errors.onError(observer, event, e, first);
+        }
+    }
+
+    /**
+     * If the event is a sticky one being published, records the subscribers it's published to
+     *
+     * @param snapshot the subscribers of the event's class it's published to
+     * @return the subscribers that have got it on registering, to skip, null if none
+     */
+    private Set<?> publishingSticky(Message event, Subscribers.PriorityEventObserver<?>[] snapshot) {
+        Sticky sticky = stickyMap.get(event.getClass());
+        if (sticky == null)
+            return null;
+
+        StickyEvent stickyEvent = sticky.last;
+        if (stickyEvent == null || stickyEvent.event != event) {
+            stickyEvent = event.topic() == null ? null : sticky.topics.get(event.topic());
+            if (stickyEvent == null || stickyEvent.event != event)
+                return null;
         }
+        return stickyEvent.publish(snapshot);
+    }
 
-        return subscribers.register(observer, priority);
+    /**
+     * Observer to register instead of the given one, e.g. the one that delivers the events on other thread
+     */
+    protected <E extends Message> EventObserver<E> decorate(EventObserver<E> observer, SubscriberInfo info) {
+        return observer;
+    }
+
+    /**
+     * @param listener null to stop reporting
+     */
+    public void setListener(EventBusListener listener) {
+        this.listener = listener;
+    }
+
+    public EventBusListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Subscribers of an event of the same priority are notified in parallel, on the pool, if there are
+     * at least threshold of them, see {@link Subscribers#setParallel(ForkJoinPool, int)}.
+     * Events published in batches or in hierarchical mode are notified on the publisher's thread.
+     *
+     * @param pool null to stop notifying in parallel
+     */
+    public synchronized void setParallel(ForkJoinPool pool, int threshold) {
+        Subscribers.Parallel parallel = pool == null ? null : new Subscribers.Parallel(pool, threshold);
+        this.parallel = parallel;
+        for (Subscribers<?> subscribers : subscribersMap.values())
+            subscribers.setParallel(parallel);
+    }
+
+    /**
+     * What the bus does if a subscriber throws, fails fast by default. Shared by all the subscribers.
+     */
+    public ObserverErrors getErrors() {
+        return errors;
+    }
+
+    /**
+     * Whether the subscribers are invoked on publish, so they are timed there.
+     * If not, the subclass reports them to the listener itself.
+     */
+    protected boolean isDeliveredOnPublish() {
+        return true;
     }
 
     public <E extends Message> void publish(E event) {
         assert event != null;
 
+        purge();
+
+        if (hierarchical) {
+            publishHierarchical(event);
+            return;
+        }
+
         @SuppressWarnings("unchecked")
         Subscribers<E> subscribers = (Subscribers<E>) subscribersMap.get(event.getClass());
-        if (subscribers != null) {
-            subscribers.notify(event);
+        Subscribers.Routes routes = subscribers == null ? Subscribers.Routes.EMPTY_ROUTES : subscribers.routes();
+        Set<?> claimed = stickyMap.isEmpty() ? null : publishingSticky(event, routes.all());
+        if (claimed != null)
+            routes = Subscribers.without(routes, claimed);
+
+        EventBusListener listener = this.listener;
+        if (listener == null) {
+            if (subscribers != null)
+                subscribers.notify(routes, event, null);
+
+        } else {
+            int notified = subscribers == null ? 0 :
+                    subscribers.notify(routes, event, isDeliveredOnPublish() ? listener : null);
+            // the subscribers that have claimed the sticky event get it on registering
+            if (notified == 0 && claimed == null)
+                listener.onDeadEvent(event);
+        }
+    }
+
+    public <E extends Message> void publishAll(E[] events) {
+        assert events != null;
+        publishAll(Arrays.asList(events));
+    }
+
+    public <E extends Message> void publishAll(Collection<E> events) {
+        assert events != null;
+
+        purge();
+
+        if (hierarchical) {
+            for (E event : events)
+                publishHierarchical(event);
+            return;
+        }
+
+        EventBusListener listener = this.listener;
+        EventBusListener timing = listener != null && isDeliveredOnPublish() ? listener : null;
+
+        List<E> list = events instanceof List && events instanceof RandomAccess ?
+                (List<E>) events : new ArrayList<>(events);
+
+        // subscribers snapshot per event class, taken once for the whole batch
+        Class<?> lastClass = null;
+        Subscribers.Routes lastRoutes = null;
+        Map<Class<?>, Subscribers.Routes> batchRoutes = null;
+
+        int size = list.size();
+        int from = 0;
+        while (from < size) {
+            Class<?> eventClass = list.get(from).getClass();
+            int to = from + 1;
+            while (to < size && list.get(to).getClass() == eventClass)
+                to++;
+
+            if (eventClass != lastClass) {
+                if (lastClass != null) {
+                    if (batchRoutes == null)
+                        batchRoutes = new IdentityHashMap<>();
+                    batchRoutes.put(lastClass, lastRoutes);
+                }
+
+                lastRoutes = batchRoutes == null ? null : batchRoutes.get(eventClass);
+                if (lastRoutes == null) {
+                    Subscribers<?> subscribers = subscribersMap.get(eventClass);
+                    lastRoutes = subscribers == null ? Subscribers.Routes.EMPTY_ROUTES : subscribers.routes();
+                }
+                lastClass = eventClass;
+            }
+
+            if (lastRoutes != Subscribers.Routes.EMPTY_ROUTES)
+                Subscribers.notifyAll(lastRoutes, from == 0 && to == size ? list : list.subList(from, to), timing, errors);
+            else if (listener != null)
+                // events routed to none of the subscribers of their class aren't reported in a batch
+                for (int i = from; i < to; i++)
+                    listener.onDeadEvent(list.get(i));
+            from = to;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <E extends Message> void publishHierarchical(E event) {
+        Class<?> eventClass = event.getClass();
+        Dispatch dispatch = dispatchMap.get(eventClass);
+        if (dispatch == null || !dispatch.isActual()) {
+            dispatch = new Dispatch(eventClass);
+            dispatchMap.put(eventClass, dispatch);
+        }
+
+        Subscribers.PriorityEventObserver<?>[] observers = dispatch.observers;
+        // the subscribers of the event's class come first
+        Set<?> claimed = stickyMap.isEmpty() ? null :
+                publishingSticky(event, (Subscribers.PriorityEventObserver<?>[]) dispatch.snapshots[0]);
+        if (claimed != null) {
+            List<Subscribers.PriorityEventObserver<?>> left = new ArrayList<>(observers.length);
+            for (Subscribers.PriorityEventObserver<?> observer : observers)
+                if (!claimed.contains(observer))
+                    left.add(observer);
+            observers = left.toArray(new Subscribers.PriorityEventObserver<?>[left.size()]);
+        }
+
+        EventBusListener listener = this.listener;
+        if (listener != null && observers.length == 0 && claimed == null)
+            listener.onDeadEvent(event);
+        EventBusListener timing = listener != null && isDeliveredOnPublish() ? listener : null;
+
+        int i = 0;
+        RuntimeException first = null;
+        while (i < observers.length) {
+            try {
+                for (; i < observers.length; i++)
+                    Subscribers.deliver((Subscribers.PriorityEventObserver<E>) observers[i], event, timing);
+
+            } catch (RuntimeException e) {
+                first = errors.onError(observers[i].observer, event, e, first);
+                i++;
+            }
+        }
+        if (first != null)
+            throw first;
+    }
+
+    /**
+     * Removes the subscribers of collected masters. Each Subscribers is rebuilt once,
+     * no matter how many of its subscribers are gone.
+     */
+    protected void purge() {
+        Reference<?> reference = collected.poll();
+        if (reference == null)
+            return;
+
+        Set<Subscribers<?>> cleared = Collections.newSetFromMap(new IdentityHashMap<Subscribers<?>, Boolean>());
+        do {
+            cleared.add(((MasterReference) reference).subscribers);
+        } while ((reference = collected.poll()) != null);
+
+        for (Subscribers<?> subscribers : cleared)
+            subscribers.removeCleared();
+    }
+
+    private Subscribers<?> subscribersOf(Class<?> eventClass) {
+        Subscribers<?> subscribers = subscribersMap.get(eventClass);
+        if (subscribers == null) {
+            subscribers = new Subscribers<Message>(errors);
+            Subscribers<?> quicker = subscribersMap.putIfAbsent(eventClass, subscribers);
+            if (quicker != null) {
+                subscribers = quicker;
+
+            } else {
+                // after it's put, under the lock, so a concurrent setParallel() can't be missed
+                synchronized (this) {
+                    subscribers.setParallel(parallel);
+                }
+            }
+        }
+        return subscribers;
+    }
+
+    private static final class Sticky {
+        private volatile StickyEvent last;
+        private final ConcurrentHashMap<String, StickyEvent> topics = new ConcurrentHashMap<String, StickyEvent>();
+    }
+
+    /**
+     * Decides who delivers the sticky event to a subscriber registered while it's being published,
+     * so it's delivered once, with no lock
+     */
+    private static final class StickyEvent {
+        private final Message event;
+        // null, then the subscribers that have claimed the event on registering, as Claims,
+        // then the subscribers of the event's class it's published to, as an array
+        private final AtomicReference<Object> state = new AtomicReference<>();
+
+        private StickyEvent(Message event) {
+            this.event = event;
+        }
+
+        /**
+         * Called by the publisher once it has the subscribers to publish to
+         *
+         * @return the subscribers that have claimed the event, to skip, null if none
+         */
+        private Set<?> publish(Subscribers.PriorityEventObserver<?>[] snapshot) {
+            while (true) {
+                Object current = state.get();
+                if (current instanceof Subscribers.PriorityEventObserver<?>[])
+                    // published before
+                    return null;
+                if (state.compareAndSet(current, snapshot))
+                    return current == null ? null : ((Claims) current).items;
+            }
+        }
+
+        /**
+         * Called once the subscriber is added
+         *
+         * @return true if the subscriber is to get the event on registering
+         */
+        private boolean claim(Subscribers.PriorityEventObserver<?> item) {
+            while (true) {
+                Object current = state.get();
+                if (current instanceof Subscribers.PriorityEventObserver<?>[]) {
+                    for (Subscribers.PriorityEventObserver<?> published : (Subscribers.PriorityEventObserver<?>[]) current)
+                        if (published == item)
+                            return false;
+                    return true;
+                }
+
+                Claims claims = new Claims((Claims) current, item);
+                if (state.compareAndSet(current, claims))
+                    return true;
+            }
+        }
+    }
+
+    private static final class Claims {
+        private final Set<Subscribers.PriorityEventObserver<?>> items;
+
+        private Claims(Claims previous, Subscribers.PriorityEventObserver<?> item) {
+            items = Collections.newSetFromMap(new IdentityHashMap<Subscribers.PriorityEventObserver<?>, Boolean>());
+            if (previous != null)
+                items.addAll(previous.items);
+            items.add(item);
+        }
+    }
+
+    private static final class MasterReference extends WeakReference<Object> {
+        private final Subscribers<?> subscribers;
+
+        private MasterReference(Object master, ReferenceQueue<Object> queue, Subscribers<?> subscribers) {
+            super(master, queue);
+            this.subscribers = subscribers;
+        }
+    }
+
+    /**
+     * Subscribers of an event class and its supertypes, merged by priority, not routed. Subscribers of all
+     * the supertypes are created up front, so registering a new event type can't make it stale.
+     */
+    private final class Dispatch {
+        private final Subscribers<?>[] sources;
+        private final Object[] snapshots;
+        private final Subscribers.PriorityEventObserver<?>[] observers;
+
+        private Dispatch(Class<?> eventClass) {
+            Set<Class<?>> types = new LinkedHashSet<>();
+            collectTypes(eventClass, types);
+
+            sources = new Subscribers<?>[types.size()];
+            snapshots = new Object[sources.length];
+            List<Subscribers.PriorityEventObserver<?>> merged = new ArrayList<>();
+            int i = 0;
+            for (Class<?> type : types) {
+                sources[i] = subscribersOf(type);
+                Subscribers.PriorityEventObserver<?>[] snapshot = sources[i].snapshot();
+                snapshots[i] = snapshot;
+                merged.addAll(Arrays.asList(snapshot));
+                i++;
+            }
+
+            // stable, so the subscribers of more specific type go first within the same priority
+            Collections.sort(merged, new Subscribers.PriorityComparator());
+            observers = merged.toArray(new Subscribers.PriorityEventObserver<?>[merged.size()]);
+        }
+
+        private boolean isActual() {
+            for (int i = 0; i < sources.length; i++)
+                if (sources[i].snapshot() != snapshots[i])
+                    return false;
+            return true;
+        }
+
+        private void collectTypes(Class<?> type, Set<Class<?>> types) {
+            if (type == null || !Message.class.isAssignableFrom(type) || !types.add(type))
+                return;
+
+            collectTypes(type.getSuperclass(), types);
+            for (Class<?> i : type.getInterfaces())
+                collectTypes(i, types);
         }
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.EventObserver;
+
+import java.util.List;
+
+/**
+ * Takes the events of a batch at once, see {@link RoutingEventBus#publishAll(java.util.Collection)}.
+ * Single events, published one by one, come to {@link #onEvent(Object)}. The list is an unmodifiable
+ * copy of the batch, the observer may keep it.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public interface BatchEventObserver<E> extends EventObserver<E> {
+    void onEvents(List<E> events);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import java.util.List;
+
+/**
+ * SubscriberObserver of a batch subscriber method, see {@link BatchEventObserver}
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public abstract class BatchSubscriberObserver<M, E> extends SubscriberObserver<M, E> implements BatchEventObserver<E> {
+
+    protected BatchSubscriberObserver(M master) {
+        super(master);
+    }
+
+    public void onEvents(List<E> events) {
+        M master = master();
+        if (master != null)
+            onEvents(master, events);
+    }
+
+    protected abstract void onEvents(M master, List<E> events);
+}
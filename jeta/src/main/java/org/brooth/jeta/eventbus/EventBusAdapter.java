@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.Observers;
+
+import java.util.Collection;
+
+/**
+ * Makes a {@link RoutingEventBus} of any {@link EventBus}. The events are routed by filtering them
+ * on delivery, the bus gets the priority only, and published one by one. Used by metacode, so the subscribers can be registered
+ * with the buses implemented before the routing.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class EventBusAdapter implements RoutingEventBus {
+
+    private final EventBus bus;
+
+    protected EventBusAdapter(EventBus bus) {
+        assert bus != null;
+        this.bus = bus;
+    }
+
+    /**
+     * @return the bus itself if it's a routing one
+     */
+    public static RoutingEventBus of(EventBus bus) {
+        return bus instanceof RoutingEventBus ? (RoutingEventBus) bus : new EventBusAdapter(bus);
+    }
+
+    public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, int priority) {
+        return bus.register(eventClass, observer, priority);
+    }
+
+    public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer,
+                                                             SubscriberInfo info) {
+        assert info != null;
+        if (info.hasIds() || info.hasTopics())
+            observer = new RoutedObserver<E>(observer, info);
+        return bus.register(eventClass, observer, info.getPriority());
+    }
+
+    public <E extends Message> void publish(E event) {
+        bus.publish(event);
+    }
+
+    /**
+     * Publishes the events one by one, batch subscribers get them one at a time
+     */
+    public <E extends Message> void publishAll(Collection<E> events) {
+        assert events != null;
+        for (E event : events)
+            bus.publish(event);
+    }
+
+    public <E extends Message> void publishAll(E[] events) {
+        assert events != null;
+        for (E event : events)
+            bus.publish(event);
+    }
+
+    private static final class RoutedObserver<E extends Message> implements EventObserver<E> {
+        private final EventObserver<E> observer;
+        private final SubscriberInfo info;
+
+        private RoutedObserver(EventObserver<E> observer, SubscriberInfo info) {
+            this.observer = observer;
+            this.info = info;
+        }
+
+        public void onEvent(E event) {
+            if (info.accepts(event))
+                observer.onEvent(event);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+/**
+ * Gets what the event bus does, see {@link BaseEventBus#setListener(EventBusListener)}.
+ * Called on the publisher's (or delivering) thread, so it must be quick and thread-safe.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public interface EventBusListener {
+
+    /**
+     * The event has no subscribers to be delivered to
+     */
+    void onDeadEvent(Message event);
+
+    /**
+     * @param subscriber the subscriber was registered with, {@link SubscriberInfo#getMasterClass()} and
+     *                   {@link SubscriberInfo#getMethodName()} are known for the generated subscribers
+     * @param count      events delivered at once, more than one for a batch subscriber
+     * @param nanos      time the subscriber took
+     */
+    void onDelivered(SubscriberInfo subscriber, int count, long nanos);
+}
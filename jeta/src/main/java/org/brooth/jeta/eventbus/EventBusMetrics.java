@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the dead events and keeps invocation count and latency histogram per subscriber method
+ * (master class and method name). Subscribers registered with no method known are counted together.
+ * <p>
+ * Override {@link #onDeadEvent(Message)} or {@link #onDelivered(SubscriberInfo, int, long)} to pass
+ * the values on to a metrics system.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class EventBusMetrics implements EventBusListener {
+
+    private final AtomicLong deadEvents = new AtomicLong();
+    // generated subscriber infos are static, so it doesn't grow
+    private final ConcurrentHashMap<SubscriberInfo, SubscriberStats> byInfo = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SubscriberStats> byMethod = new ConcurrentHashMap<>();
+    private final SubscriberStats unknown = new SubscriberStats(null, null);
+
+    public void onDeadEvent(Message event) {
+        deadEvents.incrementAndGet();
+    }
+
+    public void onDelivered(SubscriberInfo subscriber, int count, long nanos) {
+        statsOf(subscriber).record(count, nanos);
+    }
+
+    public long getDeadEventCount() {
+        return deadEvents.get();
+    }
+
+    /**
+     * @return null if the method hasn't got any events
+     */
+    public SubscriberStats getStats(Class<?> masterClass, String methodName) {
+        return byMethod.get(key(masterClass, methodName));
+    }
+
+    /**
+     * stats of the subscribers registered with no method known
+     */
+    public SubscriberStats getUnknownStats() {
+        return unknown;
+    }
+
+    public Collection<SubscriberStats> getAllStats() {
+        return Collections.unmodifiableCollection(new ArrayList<>(byMethod.values()));
+    }
+
+    private SubscriberStats statsOf(SubscriberInfo subscriber) {
+        if (subscriber.getMasterClass() == null || subscriber.getMethodName() == null)
+            return unknown;
+
+        SubscriberStats stats = byInfo.get(subscriber);
+        if (stats == null) {
+            String key = key(subscriber.getMasterClass(), subscriber.getMethodName());
+            stats = byMethod.get(key);
+            if (stats == null) {
+                stats = new SubscriberStats(subscriber.getMasterClass(), subscriber.getMethodName());
+                SubscriberStats quicker = byMethod.putIfAbsent(key, stats);
+                if (quicker != null)
+                    stats = quicker;
+            }
+            byInfo.put(subscriber, stats);
+        }
+        return stats;
+    }
+
+    private static String key(Class<?> masterClass, String methodName) {
+        return masterClass.getName() + '#' + methodName;
+    }
+
+    /**
+     * Latencies go to power of 2 nanosecond buckets, bucket i holds [2^i, 2^(i+1))
+     */
+    public static final class SubscriberStats {
+        public static final int BUCKETS = 64;
+
+        private final Class<?> masterClass;
+        private final String methodName;
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private SubscriberStats(Class<?> masterClass, String methodName) {
+            this.masterClass = masterClass;
+            this.methodName = methodName;
+        }
+
+        private void record(int count, long nanos) {
+            invocations.incrementAndGet();
+            events.addAndGet(count);
+            totalNanos.addAndGet(nanos);
+            histogram.incrementAndGet(bucketOf(nanos));
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        /**
+         * null for the subscribers with no method known
+         */
+        public Class<?> getMasterClass() {
+            return masterClass;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public long getInvocationCount() {
+            return invocations.get();
+        }
+
+        /**
+         * greater than invocation count if batches are delivered
+         */
+        public long getEventCount() {
+            return events.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getAverageNanos() {
+            long count = invocations.get();
+            return count == 0 ? 0 : totalNanos.get() / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * invocations per bucket, see {@link SubscriberStats}
+         */
+        public long[] getHistogram() {
+            long[] result = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++)
+                result[i] = histogram.get(i);
+            return result;
+        }
+
+        /**
+         * @param percentile 0 to 100
+         * @return upper bound of the bucket the percentile falls into, 0 if there are no invocations
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("percentile must be from 0 to 100");
+
+            long[] buckets = getHistogram();
+            long total = 0;
+            for (long count : buckets)
+                total += count;
+            if (total == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0)
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private static int bucketOf(long nanos) {
+            return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+        }
+    }
+}
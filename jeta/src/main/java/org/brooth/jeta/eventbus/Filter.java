@@ -17,6 +17,9 @@
 package org.brooth.jeta.eventbus;
 
 /**
+ * Used in {@link Subscribe#filters()}, a single instance is created per subscriber's class
+ * and shared between the events and the threads, so it must be stateless.
+ *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
 public interface Filter<M, E extends Message> {
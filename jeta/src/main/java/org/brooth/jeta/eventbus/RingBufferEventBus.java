@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.ArrayObservers;
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.Observers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves the events from a single publisher thread to the subscribers through a preallocated ring of slots,
+ * with no locks and no allocation per event. Each subscriber runs on its own thread and tracks its own
+ * sequence in the ring, the publisher waits for the slowest one before it reuses a slot.
+ * The slots keep references to the published events, a slot is cleared once all the subscribers
+ * have read it, so the ring doesn't keep delivered events alive.
+ * <p>
+ * Subscribers get the events of exactly their class, routed by ids and topics as {@link BaseEventBus} does,
+ * each subscriber in publish order. Subscribers run concurrently, so the priority has no effect.
+ * A subscriber gets the events published after it's registered. Publishing from several threads
+ * must be synchronized by the caller.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class RingBufferEventBus implements RoutingEventBus {
+
+    /**
+     * What a thread does while it waits for the events (subscribers) or for a free slot (publisher)
+     */
+    public enum WaitStrategy {
+        /**
+         * lowest latency, burns a core per waiting thread
+         */
+        BUSY_SPIN {
+            int idle(int counter) {
+                return counter + 1;
+            }
+        },
+        /**
+         * spins for a while, then gives the core to other threads
+         */
+        YIELD {
+            int idle(int counter) {
+                if (counter > SPIN_TRIES)
+                    Thread.yield();
+                return counter + 1;
+            }
+        },
+        /**
+         * spins for a while, then parks the thread for a short time, the lowest CPU usage
+         */
+        PARK {
+            int idle(int counter) {
+                if (counter > SPIN_TRIES)
+                    LockSupport.parkNanos(PARK_NANOS);
+                return counter + 1;
+            }
+        };
+
+        private static final int SPIN_TRIES = 100;
+        private static final long PARK_NANOS = 50000L;
+
+        /**
+         * @param counter number of times the thread has been idle in a row
+         */
+        abstract int idle(int counter);
+    }
+
+    private static final Consumer<?>[] NO_CONSUMERS = new Consumer<?>[0];
+
+    private final Message[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final ThreadFactory threadFactory;
+
+    private final Sequence cursor = new Sequence(-1);
+    // publisher only, the lowest consumer sequence seen last time
+    private long gatingCache = -1;
+
+    private volatile Consumer<?>[] consumers = NO_CONSUMERS;
+
+    public RingBufferEventBus(int size) {
+        this(size, WaitStrategy.YIELD, new ConsumerThreadFactory());
+    }
+
+    public RingBufferEventBus(int size, WaitStrategy waitStrategy) {
+        this(size, waitStrategy, new ConsumerThreadFactory());
+    }
+
+    /**
+     * @param size number of slots, power of 2
+     */
+    public RingBufferEventBus(int size, WaitStrategy waitStrategy, ThreadFactory threadFactory) {
+        if (size < 1 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("size must be power of 2");
+        assert waitStrategy != null;
+        assert threadFactory != null;
+
+        this.slots = new Message[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.threadFactory = threadFactory;
+    }
+
+    public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, int priority) {
+        return register(eventClass, observer, new SubscriberInfo(priority));
+    }
+
+    public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, SubscriberInfo info) {
+        assert eventClass != null;
+        assert observer != null;
+        assert info != null;
+
+        Consumer<E> consumer = new Consumer<E>(eventClass, info);
+        Observers.Handler<E> handler = consumer.register(observer);
+        start(consumer);
+        return handler;
+    }
+
+    public <E extends Message> void publish(E event) {
+        assert event != null;
+
+        long next = cursor.value + 1;
+        long wrapPoint = next - slots.length;
+        if (wrapPoint > gatingCache) {
+            int counter = 0;
+            long min;
+            while (wrapPoint > (min = minSequence(next - 1)))
+                counter = waitStrategy.idle(counter);
+            gatingCache = min;
+        }
+
+        slots[(int) next & mask] = event;
+        cursor.value = next;
+    }
+
+    public <E extends Message> void publishAll(Collection<E> events) {
+        assert events != null;
+        for (E event : events)
+            publish(event);
+    }
+
+    public <E extends Message> void publishAll(E[] events) {
+        assert events != null;
+        for (E event : events)
+            publish(event);
+    }
+
+    /**
+     * Stops all the subscribers' threads. Events not delivered yet are lost
+     */
+    public void shutdown() {
+        for (Consumer<?> consumer : consumers)
+            consumer.running = false;
+    }
+
+    /**
+     * events published, but not delivered to the slowest subscriber yet
+     */
+    public long getBacklog() {
+        long published = cursor.value;
+        return published - minSequence(published);
+    }
+
+    private long minSequence(long published) {
+        long min = published;
+        for (Consumer<?> consumer : consumers) {
+            long sequence = consumer.sequence.value;
+            if (sequence < min)
+                min = sequence;
+        }
+        return min;
+    }
+
+    private synchronized void start(Consumer<?> consumer) {
+        // added with its initial sequences first, so the publisher can't wrap the ring over it
+        // and the others don't clear its slots, then moved to the last published event.
+        // The publisher that hasn't seen it yet has gated on a sequence not after that event
+        Consumer<?>[] current = consumers;
+        Consumer<?>[] result = Arrays.copyOf(current, current.length + 1);
+        result[current.length] = consumer;
+        consumers = result;
+
+        long published = cursor.value;
+        consumer.read.value = published;
+        consumer.sequence.value = published;
+
+        try {
+            threadFactory.newThread(consumer).start();
+        } catch (RuntimeException e) {
+            remove(consumer);
+            throw e;
+        }
+    }
+
+    /**
+     * Called by the consumer's thread once it's stopped. Till then the publisher waits for it,
+     * so it can't reuse a slot the consumer is reading or clearing
+     */
+    private synchronized void remove(Consumer<?> consumer) {
+        Consumer<?>[] current = consumers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == consumer) {
+                Consumer<?>[] result = new Consumer<?>[current.length - 1];
+                System.arraycopy(current, 0, result, 0, i);
+                System.arraycopy(current, i + 1, result, i, current.length - i - 1);
+                consumers = result;
+                break;
+            }
+        }
+    }
+
+    /**
+     * The observers of a single subscriber, fed from the ring by their own thread.
+     * Unregistering the subscriber stops the thread, once it's returned from the subscriber.
+     */
+    private final class Consumer<E extends Message> extends ArrayObservers<E> implements Runnable {
+        private final Class<E> eventClass;
+        private final SubscriberInfo info;
+        private final boolean routed;
+
+        // the last sequence delivered, or skipped
+        private final Sequence sequence = new Sequence(-1);
+        // the last sequence read from the ring, ahead of the delivered one while the subscriber runs
+        private final Sequence read = new Sequence(-1);
+        private volatile boolean running = true;
+
+        // consumer thread only, the lowest read sequence of the other consumers seen last time
+        private Consumer<?>[] othersOf;
+        private long othersRead;
+
+        private Consumer(Class<E> eventClass, SubscriberInfo info) {
+            this.eventClass = eventClass;
+            this.info = info;
+            this.routed = info.hasIds() || info.hasTopics();
+        }
+
+        @Override
+        public boolean unregister(EventObserver<E> observer) {
+            if (!super.unregister(observer))
+                return false;
+            running = false;
+            return true;
+        }
+
+        @Override
+        public int unregisterAll(Collection<? extends EventObserver<E>> toRemove) {
+            int result = super.unregisterAll(toRemove);
+            if (result > 0)
+                running = false;
+            return result;
+        }
+
+        public void run() {
+            try {
+                consume();
+            } finally {
+                remove(this);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void consume() {
+            long next = sequence.value + 1;
+            int counter = 0;
+            while (running) {
+                long available = cursor.value;
+                if (available < next) {
+                    counter = waitStrategy.idle(counter);
+                    continue;
+                }
+
+                counter = 0;
+                for (; next <= available && running; next++) {
+                    int index = (int) next & mask;
+                    Message event = slots[index];
+                    read.value = next;
+                    // not cleared yet, the others clear the slots this consumer has read only
+                    if (event.getClass() == eventClass && (!routed || info.accepts(event))) {
+                        try {
+                            notify((E) event);
+
+                        } catch (RuntimeException e) {
+                            // the ring can't stop because of a subscriber
+                            Thread thread = Thread.currentThread();
+                            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                        }
+                    }
+                    // the others have read it, and the publisher can't reuse the slot
+                    // until this consumer's sequence moves
+                    if (next <= othersRead(next))
+                        slots[index] = null;
+                    sequence.value = next;
+                }
+            }
+        }
+
+        private long othersRead(long next) {
+            Consumer<?>[] current = consumers;
+            if (current != othersOf || next > othersRead) {
+                long min = Long.MAX_VALUE;
+                for (Consumer<?> consumer : current) {
+                    if (consumer != this) {
+                        long read = consumer.read.value;
+                        if (read < min)
+                            min = read;
+                    }
+                }
+                othersOf = current;
+                othersRead = min;
+            }
+            return othersRead;
+        }
+    }
+
+    /**
+     * Sequence padded against false sharing with the neighbour fields
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence {
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private volatile long value;
+        private long p9, p10, p11, p12, p13, p14, p15;
+
+        private Sequence(long value) {
+            this.value = value;
+        }
+    }
+
+    private static final class ConsumerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger number = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jeta-ring-consumer-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
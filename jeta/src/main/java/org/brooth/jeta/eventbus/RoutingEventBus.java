@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.Observers;
+
+import java.util.Collection;
+
+/**
+ * Event bus that routes the events by the subscribers' ids and topics itself, and publishes them in batches.
+ * Apart from {@link EventBus}, so its implementations keep compiling, see {@link EventBusAdapter} to use them
+ * as this one.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public interface RoutingEventBus extends EventBus {
+
+    /**
+     * @param info priority, and ids and topics to route the events by
+     */
+    <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, SubscriberInfo info);
+
+    /**
+     * Delivers the events in order. Within a run of the events of the same class, each subscriber
+     * gets the whole run before the next one, batch subscribers - at once.
+     */
+    <E extends Message> void publishAll(Collection<E> events);
+
+    <E extends Message> void publishAll(E[] events);
+}
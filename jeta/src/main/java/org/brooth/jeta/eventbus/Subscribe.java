@@ -32,4 +32,11 @@ public @interface Subscribe {
     String[] topic() default {};
 
     int priority() default 0;
+
+    /**
+     * The bus holds the master weakly, so a subscriber that is never unregistered doesn't leak.
+     * Once the master is collected, the subscriber is removed on the next publish or register.
+     * A bus can make all the subscriptions weak, see {@link BaseEventBus#BaseEventBus(boolean, boolean)}
+     */
+    boolean weak() default false;
 }
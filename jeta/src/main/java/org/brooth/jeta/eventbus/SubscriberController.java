@@ -30,8 +30,15 @@ public class SubscriberController<M> extends MasterController<M, SubscriberMetac
 
     public SubscriptionHandler registerSubscriber(EventBus bus) {
         SubscriptionHandler handler = new SubscriptionHandler();
-        for (SubscriberMetacode<M> metacode : metacodes)
-            handler.add(metacode.applySubscribers(bus, master));
+        try {
+            for (SubscriberMetacode<M> metacode : metacodes)
+                handler.add(metacode.applySubscribers(bus, master));
+
+        } catch (RuntimeException e) {
+            // none or all
+            handler.unregisterAll();
+            throw e;
+        }
 
         return handler;
     }
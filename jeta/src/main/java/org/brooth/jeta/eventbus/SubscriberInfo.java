@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import java.util.Arrays;
+
+/**
+ * Describes a subscriber at registration time. SubscribeProcessor creates one per subscriber method,
+ * so the bus can route the events by ids and topics instead of delivering all of them to be filtered out.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class SubscriberInfo {
+
+    private final Class<?> masterClass;
+    private final String methodName;
+    private final int priority;
+    private final int[] ids;
+    private final String[] topics;
+    private final boolean weak;
+
+    public SubscriberInfo(int priority) {
+        this(null, null, priority, null, null);
+    }
+
+    /**
+     * @param ids    event ids the subscriber accepts, null or empty for any
+     * @param topics event topics the subscriber accepts, null or empty for any
+     */
+    public SubscriberInfo(Class<?> masterClass, String methodName, int priority, int[] ids, String[] topics) {
+        this(masterClass, methodName, priority, ids, topics, false);
+    }
+
+    /**
+     * @param weak whether the bus holds the master weakly, see {@link Subscribe#weak()}
+     */
+    public SubscriberInfo(Class<?> masterClass, String methodName, int priority, int[] ids, String[] topics, boolean weak) {
+        this.masterClass = masterClass;
+        this.methodName = methodName;
+        this.priority = priority;
+        this.ids = ids == null ? new int[0] : ids.clone();
+        this.topics = topics == null ? new String[0] : topics.clone();
+        this.weak = weak;
+    }
+
+    /**
+     * null if unknown
+     */
+    public Class<?> getMasterClass() {
+        return masterClass;
+    }
+
+    /**
+     * null if unknown
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    public String[] getTopics() {
+        return topics.clone();
+    }
+
+    public boolean isWeak() {
+        return weak;
+    }
+
+    boolean hasIds() {
+        return ids.length > 0;
+    }
+
+    boolean hasTopics() {
+        return topics.length > 0;
+    }
+
+    int[] ids() {
+        return ids;
+    }
+
+    String[] topics() {
+        return topics;
+    }
+
+    /**
+     * whether the event matches the topics, or the ids if there are no topics,
+     * the same rule the event bus routes it by
+     */
+    boolean accepts(Message event) {
+        if (topics.length > 0) {
+            String topic = event.topic();
+            if (topic != null)
+                for (String s : topics)
+                    if (topic.equals(s))
+                        return true;
+            return false;
+        }
+
+        if (ids.length > 0) {
+            int id = event.id();
+            for (int i : ids)
+                if (i == id)
+                    return true;
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriberInfo{" + (masterClass == null ? "" : masterClass.getName() + '.' + methodName + ", ") +
+                "priority=" + priority + ", ids=" + Arrays.toString(ids) + ", topics=" + Arrays.toString(topics) + '}';
+    }
+}
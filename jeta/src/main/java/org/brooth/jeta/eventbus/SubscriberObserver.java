@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.observer.EventObserver;
+
+import java.lang.ref.Reference;
+
+/**
+ * Observer of a subscriber method, created by SubscribeProcessor. It holds the master itself, not through
+ * the enclosing scope, so the bus can hold it weakly (see {@link Subscribe#weak()}).
+ * Events that come after the master is collected are ignored.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public abstract class SubscriberObserver<M, E> implements EventObserver<E> {
+
+    private M master;
+    private Reference<?> reference;
+
+    protected SubscriberObserver(M master) {
+        assert master != null;
+        this.master = master;
+    }
+
+    public void onEvent(E event) {
+        M master = master();
+        if (master != null)
+            onEvent(master, event);
+    }
+
+    protected abstract void onEvent(M master, E event);
+
+    /**
+     * @return null if the master is collected
+     */
+    @SuppressWarnings("unchecked")
+    protected M master() {
+        return reference == null ? master : (M) reference.get();
+    }
+
+    /**
+     * From now on the master is held through the reference only.
+     * Must be called before the observer is registered.
+     */
+    void weaken(Reference<?> reference) {
+        assert reference.get() == master;
+        this.reference = reference;
+        this.master = null;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.brooth.jeta.eventbus;
+
+import org.brooth.jeta.MasterClassController;
+import org.brooth.jeta.metasitory.Metasitory;
+
+/**
+ * Class level SubscriberController, see {@link org.brooth.jeta.inject.InjectPlan}
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class SubscriberPlan<M> extends MasterClassController<M, SubscriberMetacode<M>> {
+
+    private final SubscriberMetacode<M>[] plan;
+
+    @SuppressWarnings("unchecked")
+    public SubscriberPlan(Metasitory metasitory, Class<M> masterClass) {
+        super(metasitory, masterClass, Subscribe.class);
+        plan = metacodes.toArray((SubscriberMetacode<M>[]) new SubscriberMetacode<?>[metacodes.size()]);
+    }
+
+    public SubscriptionHandler registerSubscriber(EventBus bus, M master) {
+        assert master != null && master.getClass() == masterClass;
+
+        SubscriptionHandler handler = new SubscriptionHandler();
+        try {
+            for (SubscriberMetacode<M> metacode : plan)
+                handler.add(metacode.applySubscribers(bus, master));
+
+        } catch (RuntimeException e) {
+            // none or all
+            handler.unregisterAll();
+            throw e;
+        }
+
+        return handler;
+    }
+}
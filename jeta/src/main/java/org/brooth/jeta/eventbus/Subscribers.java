@@ -1,82 +1,853 @@
 /*
  * Copyright 2016 Oleg Khalidov
  *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
  *
- *      http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.apache.org/licenses/LICENSE-2.0
  *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
  */
-
 package org.brooth.jeta.eventbus;
 
 import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.ObserverErrors;
 import org.brooth.jeta.observer.Observers;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
+ * Keeps the observers in arrays sorted by priority, highest first, equal priorities in order of registering.
+ * Each change publishes a new set of arrays, so notify always goes through a complete snapshot without locking.
+ * <p>
+ * Observers registered with topics are routed by the event's topic, the ones with ids only - by the event's id,
+ * so an event goes through the observers it can be accepted by, merged by priority on the fly.
+ *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
 public class Subscribers<E extends Message> {
 
-    private Observers<E> observers = new ObserversDecorator<E>();
+    private static final PriorityEventObserver<?>[] EMPTY = new PriorityEventObserver<?>[0];
+
+    private final SortedObservers observers = new SortedObservers();
+    private volatile Routes routes = Routes.EMPTY_ROUTES;
+    // guarded by this
+    private long sequence = 0;
+    // null to fail fast
+    private final ObserverErrors errors;
+    // null to notify on the publisher's thread only
+    private volatile Parallel parallel;
+
+    public Subscribers() {
+        this(null);
+    }
+
+    /**
+     * @param errors what to do if an observer throws, null to fail fast
+     */
+    public Subscribers(ObserverErrors errors) {
+        this.errors = errors;
+    }
 
     public int notify(E event) {
-        return observers.notify(event);
+        return notify(event, null);
+    }
+
+    /**
+     * @param listener the observers are timed with, null not to time
+     * @return number of observers the event is routed to
+     */
+    int notify(E event, EventBusListener listener) {
+        return notify(routes, event, listener);
+    }
+
+    /**
+     * @param current snapshot of the routes, see {@link #routes()}
+     */
+    int notify(Routes current, E event, EventBusListener listener) {
+        Parallel parallel = this.parallel;
+        if (!current.routed) {
+            if (parallel != null && current.all.length >= parallel.threshold)
+                return notifyParallel(current.all, event, listener, parallel);
+            return notify(current.all, event, listener);
+        }
+
+        PriorityEventObserver<?>[] byTopic = EMPTY;
+        if (!current.topics.isEmpty() && event.topic() != null) {
+            PriorityEventObserver<?>[] bucket = current.topics.get(event.topic());
+            if (bucket != null)
+                byTopic = bucket;
+        }
+
+        PriorityEventObserver<?>[] byId = EMPTY;
+        if (current.idKeys.length > 0) {
+            int index = Arrays.binarySearch(current.idKeys, event.id());
+            if (index >= 0)
+                byId = current.idBuckets[index];
+        }
+
+        if (byTopic.length == 0 && byId.length == 0) {
+            if (parallel != null && current.unrouted.length >= parallel.threshold)
+                return notifyParallel(current.unrouted, event, listener, parallel);
+            return notify(current.unrouted, event, listener);
+        }
+
+        if (parallel != null && current.unrouted.length + byTopic.length + byId.length >= parallel.threshold)
+            return notifyParallel(merge(current.unrouted, byTopic, byId), event, listener, parallel);
+        return notify(current.unrouted, byTopic, byId, event, listener);
+    }
+
+    /**
+     * Observers of the same priority are notified in parallel, on the pool, if there are at least
+     * threshold of them. Higher priority observers are all done before the lower ones start.
+     * The listener and the error handler are called from the pool threads, so they must be thread-safe.
+     *
+     * @param pool null to notify on the publisher's thread only, the default
+     */
+    public void setParallel(ForkJoinPool pool, int threshold) {
+        setParallel(pool == null ? null : new Parallel(pool, threshold));
+    }
+
+    void setParallel(Parallel parallel) {
+        this.parallel = parallel;
     }
 
     public int notifyAndClear(E event) {
-        return observers.notifyAndClear(event);
+        int result = notify(event);
+        clear();
+        return result;
     }
 
-    public void clear() {
-        observers.clear();
+    public synchronized void clear() {
+        if (errors != null)
+            for (PriorityEventObserver<?> item : routes.all)
+                errors.forget(item.observer);
+        routes = Routes.EMPTY_ROUTES;
     }
 
+    @SuppressWarnings("unchecked")
     public List<EventObserver<E>> getAll() {
-        return observers.getAll();
+        return Collections.unmodifiableList(Arrays.asList((EventObserver<E>[]) routes.all));
+    }
+
+    public Observers.Handler<E> register(EventObserver<E> observer, int priority) {
+        return register(observer, new SubscriberInfo(priority));
+    }
+
+    public Observers.Handler<E> register(EventObserver<E> observer, SubscriberInfo info) {
+        assert info != null;
+        return register(new PriorityEventObserver<E>(observer, info, null));
+    }
+
+    /**
+     * @param master reference to the observer's master, the observer is removed by
+     *               {@link #removeCleared()} once it's cleared
+     */
+    Observers.Handler<E> register(EventObserver<E> observer, SubscriberInfo info, Reference<?> master) {
+        assert info != null;
+        return register(new PriorityEventObserver<E>(observer, info, master));
+    }
+
+    Observers.Handler<E> register(PriorityEventObserver<E> item) {
+        return observers.register(item);
+    }
+
+    /**
+     * Removes the observers whose masters are collected, all at once
+     *
+     * @return number of observers removed
+     */
+    synchronized int removeCleared() {
+        return removeWhere(null, true);
+    }
+
+    private synchronized int removeAll(Set<?> toRemove) {
+        return removeWhere(toRemove, false);
+    }
+
+    /**
+     * Removes the observers of the set, and the ones whose masters are collected if asked,
+     * rebuilding the routes once
+     */
+    private int removeWhere(Set<?> toRemove, boolean cleared) {
+        Routes current = routes;
+        List<PriorityEventObserver<?>> alive = null;
+        List<PriorityEventObserver<?>> removed = null;
+        for (int i = 0; i < current.all.length; i++) {
+            PriorityEventObserver<?> item = current.all[i];
+            if ((toRemove != null && toRemove.contains(item)) ||
+                    (cleared && item.master != null && item.master.get() == null)) {
+                if (alive == null) {
+                    alive = new ArrayList<PriorityEventObserver<?>>(Arrays.asList(current.all).subList(0, i));
+                    removed = new ArrayList<>();
+                }
+                removed.add(item);
+            } else if (alive != null) {
+                alive.add(item);
+            }
+        }
+        if (alive == null)
+            return 0;
+
+        routes = alive.isEmpty() ? Routes.EMPTY_ROUTES : rebuild(alive);
+        if (errors != null) {
+            Set<EventObserver<?>> left = new HashSet<>();
+            for (PriorityEventObserver<?> item : alive)
+                left.add(item.observer);
+            for (PriorityEventObserver<?> item : removed)
+                if (!left.contains(item.observer))
+                    errors.forget(item.observer);
+        }
+        return removed.size();
+    }
+
+    Routes routes() {
+        return routes;
+    }
+
+    /**
+     * @return the routes without the observers of the set
+     */
+    static Routes without(Routes routes, Set<?> toSkip) {
+        List<PriorityEventObserver<?>> left = new ArrayList<>(routes.all.length);
+        for (PriorityEventObserver<?> item : routes.all)
+            if (!toSkip.contains(item))
+                left.add(item);
+        return left.size() == routes.all.length ? routes :
+                left.isEmpty() ? Routes.EMPTY_ROUTES : rebuild(left);
+    }
+
+    /**
+     * Each observer goes through the events before the next one, batch observers get them at once,
+     * as an unmodifiable copy, so they don't see the caller's list. Routed observers get the events
+     * they are routed by only.
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Message> void notifyAll(Routes routes, List<E> events, EventBusListener listener,
+                                              ObserverErrors errors) {
+        RuntimeException first = null;
+        // copied once, for the first batch observer that takes all the events
+        List<E> batch = null;
+        for (PriorityEventObserver<?> item : routes.all) {
+            PriorityEventObserver<E> observer = (PriorityEventObserver<E>) item;
+            if (observer.batch) {
+                List<E> accepted;
+                if (!observer.routed) {
+                    if (batch == null)
+                        batch = Collections.unmodifiableList(new ArrayList<>(events));
+                    accepted = batch;
+
+                } else {
+                    accepted = null;
+                    for (int i = 0; i < events.size(); i++) {
+                        E event = events.get(i);
+                        if (observer.accepts(event)) {
+                            if (accepted == null)
+                                accepted = new ArrayList<>();
+                            accepted.add(event);
+                        }
+                    }
+                    if (accepted != null)
+                        accepted = Collections.unmodifiableList(accepted);
+                }
+                if (accepted != null) {
+                    try {
+                        if (listener == null) {
+                            ((BatchEventObserver<E>) observer.observer).onEvents(accepted);
+                        } else {
+                            long start = System.nanoTime();
+                            ((BatchEventObserver<E>) observer.observer).onEvents(accepted);
+                            listener.onDelivered(observer.info, accepted.size(), System.nanoTime() - start);
+                        }
+
+                    } catch (RuntimeException e) {
+                        if (errors == null)
+                            throw e;
+                        first = errors.onError(observer.observer, accepted, e, first);
+                    }
+                }
+
+            } else {
+                int i = 0;
+                while (i < events.size()) {
+                    try {
+                        for (; i < events.size(); i++) {
+                            E event = events.get(i);
+                            if (!observer.routed || observer.accepts(event))
+                                deliver(observer, event, listener);
+                        }
+
+                    } catch (RuntimeException e) {
+                        if (errors == null)
+                            throw e;
+                        first = errors.onError(observer.observer, events.get(i), e, first);
+                        i++;
+                    }
+                }
+            }
+        }
+
+        if (first != null)
+            throw first;
+    }
+
+    /**
+     * All the current observers, routed or not. A new array is published on each change,
+     * so it also tells whether the subscribers have been changed since the array was taken
+     */
+    PriorityEventObserver<?>[] snapshot() {
+        return routes.all;
+    }
+
+    /**
+     * Times the observer if there's a listener
+     */
+    static <E> void deliver(PriorityEventObserver<E> observer, E event, EventBusListener listener) {
+        if (listener == null) {
+            observer.onEvent(event);
+            return;
+        }
+
+        long start = System.nanoTime();
+        observer.onEvent(event);
+        listener.onDelivered(observer.info, 1, System.nanoTime() - start);
+    }
+
+    private int notify(PriorityEventObserver<?>[] observers, E event, EventBusListener listener) {
+        RuntimeException first = notify(observers, 0, observers.length, event, listener, null);
+        if (first != null)
+            throw first;
+        return observers.length;
+    }
+
+    /**
+     * The try is out of the loop, so the loop stays tight while no observer throws
+     *
+     * @return the exception to throw once all the observers are notified, null if none
+     */
+    @SuppressWarnings("unchecked")
+    private RuntimeException notify(PriorityEventObserver<?>[] observers, int from, int to, E event,
+                                    EventBusListener listener, RuntimeException first) {
+        int i = from;
+        while (i < to) {
+            try {
+                for (; i < to; i++)
+                    deliver((PriorityEventObserver<E>) observers[i], event, listener);
+
+            } catch (RuntimeException e) {
+                first = failed(observers[i], event, e, first);
+                i++;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Priority groups one by one, each one on the pool if it's big enough. Failures of a group are
+     * passed to the error policy on the publisher's thread, before the next group starts.
+     */
+    private int notifyParallel(PriorityEventObserver<?>[] observers, E event, EventBusListener listener,
+                               Parallel parallel) {
+        RuntimeException first = null;
+        int from = 0;
+        while (from < observers.length) {
+            int priority = observers[from].priority;
+            int to = from + 1;
+            while (to < observers.length && observers[to].priority == priority)
+                to++;
+
+            if (to - from < parallel.threshold) {
+                first = notify(observers, from, to, event, listener, first);
+
+            } else {
+                int leaf = Math.max(1, (to - from) / (parallel.pool.getParallelism() * 4));
+                Fanout<E> fanout = new Fanout<E>(observers, from, to, leaf, event, listener,
+                        new ConcurrentLinkedQueue<Failure>());
+                parallel.pool.invoke(fanout);
+                for (Failure failure : fanout.failures)
+                    first = failed(failure.observer, event, failure.error, first);
+            }
+            from = to;
+        }
+
+        if (first != null)
+            throw first;
+        return observers.length;
+    }
+
+    /**
+     * Merged by priority and registering order, as the three arrays are notified
+     */
+    private static PriorityEventObserver<?>[] merge(PriorityEventObserver<?>[] a, PriorityEventObserver<?>[] b,
+                                                    PriorityEventObserver<?>[] c) {
+        PriorityEventObserver<?>[] result = new PriorityEventObserver<?>[a.length + b.length + c.length];
+        int i = 0, j = 0, k = 0;
+        for (int n = 0; n < result.length; n++) {
+            PriorityEventObserver<?> next = null;
+            if (i < a.length)
+                next = a[i];
+            if (j < b.length && (next == null || b[j].precedes(next)))
+                next = b[j];
+            if (k < c.length && (next == null || c[k].precedes(next)))
+                next = c[k];
+
+            if (i < a.length && next == a[i])
+                i++;
+            else if (j < b.length && next == b[j])
+                j++;
+            else
+                k++;
+            result[n] = next;
+        }
+        return result;
+    }
+
+    /**
+     * @return the exception to throw once all the observers are notified, null if none
+     */
+    private RuntimeException failed(PriorityEventObserver<?> observer, E event, RuntimeException error,
+                                    RuntimeException first) {
+        if (errors == null)
+            throw error;
+        return errors.onError(observer.observer, event, error, first);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int notify(PriorityEventObserver<?>[] a, PriorityEventObserver<?>[] b, PriorityEventObserver<?>[] c, E event,
+                       EventBusListener listener) {
+        int i = 0, j = 0, k = 0;
+        PriorityEventObserver<?> next = null;
+        RuntimeException first = null;
+        while (i < a.length || j < b.length || k < c.length) {
+            try {
+                while (i < a.length || j < b.length || k < c.length) {
+                    next = null;
+                    int source = 0;
+                    if (i < a.length)
+                        next = a[i];
+                    if (j < b.length && (next == null || b[j].precedes(next))) {
+                        next = b[j];
+                        source = 1;
+                    }
+                    if (k < c.length && (next == null || c[k].precedes(next))) {
+                        next = c[k];
+                        source = 2;
+                    }
+
+                    if (source == 0)
+                        i++;
+                    else if (source == 1)
+                        j++;
+                    else
+                        k++;
+
+                    deliver((PriorityEventObserver<E>) next, event, listener);
+                }
+
+            } catch (RuntimeException e) {
+                // the indexes are past the failed observer already
+                first = failed(next, event, e, first);
+            }
+        }
+
+        if (first != null)
+            throw first;
+        return a.length + b.length + c.length;
+    }
+
+    private synchronized void insert(PriorityEventObserver<E> observer) {
+        observer.sequence = sequence++;
+        Routes current = routes;
+        PriorityEventObserver<?>[] all = insert(current.all, observer);
+        PriorityEventObserver<?>[] unrouted = current.unrouted;
+        Map<String, PriorityEventObserver<?>[]> topics = current.topics;
+        int[] idKeys = current.idKeys;
+        PriorityEventObserver<?>[][] idBuckets = current.idBuckets;
+
+        SubscriberInfo info = observer.info;
+        if (info.hasTopics()) {
+            // ids, if any, are checked by the observer itself
+            topics = new HashMap<>(topics);
+            for (String topic : info.topics()) {
+                PriorityEventObserver<?>[] bucket = topics.get(topic);
+                topics.put(topic, insert(bucket == null ? EMPTY : bucket, observer));
+            }
+
+        } else if (info.hasIds()) {
+            for (int id : info.ids()) {
+                int index = Arrays.binarySearch(idKeys, id);
+                if (index >= 0) {
+                    if (idBuckets == current.idBuckets)
+                        idBuckets = idBuckets.clone();
+                    idBuckets[index] = insert(idBuckets[index], observer);
+
+                } else {
+                    index = -index - 1;
+                    int[] keys = new int[idKeys.length + 1];
+                    System.arraycopy(idKeys, 0, keys, 0, index);
+                    keys[index] = id;
+                    System.arraycopy(idKeys, index, keys, index + 1, idKeys.length - index);
+                    PriorityEventObserver<?>[][] buckets = new PriorityEventObserver<?>[idBuckets.length + 1][];
+                    System.arraycopy(idBuckets, 0, buckets, 0, index);
+                    buckets[index] = new PriorityEventObserver<?>[]{observer};
+                    System.arraycopy(idBuckets, index, buckets, index + 1, idBuckets.length - index);
+                    idKeys = keys;
+                    idBuckets = buckets;
+                }
+            }
+
+        } else {
+            unrouted = insert(unrouted, observer);
+        }
+
+        routes = new Routes(all, unrouted, topics, idKeys, idBuckets);
+    }
+
+    private synchronized boolean remove(EventObserver<E> observer) {
+        if (!(observer instanceof PriorityEventObserver))
+            return false;
+
+        PriorityEventObserver<?> item = (PriorityEventObserver<?>) observer;
+        Routes current = routes;
+        PriorityEventObserver<?>[] all = remove(current.all, item);
+        if (all == current.all)
+            return false;
+
+        PriorityEventObserver<?>[] unrouted = current.unrouted;
+        Map<String, PriorityEventObserver<?>[]> topics = current.topics;
+        int[] idKeys = current.idKeys;
+        PriorityEventObserver<?>[][] idBuckets = current.idBuckets;
+
+        SubscriberInfo info = item.info;
+        if (info.hasTopics()) {
+            topics = new HashMap<>(topics);
+            for (String topic : info.topics()) {
+                PriorityEventObserver<?>[] bucket = topics.get(topic);
+                if (bucket == null)
+                    continue;
+                bucket = remove(bucket, item);
+                if (bucket.length == 0)
+                    topics.remove(topic);
+                else
+                    topics.put(topic, bucket);
+            }
+
+        } else if (info.hasIds()) {
+            // empty buckets are kept, their ids are likely to be subscribed to again
+            idBuckets = idBuckets.clone();
+            for (int id : info.ids()) {
+                int index = Arrays.binarySearch(idKeys, id);
+                if (index >= 0)
+                    idBuckets[index] = remove(idBuckets[index], item);
+            }
+
+        } else {
+            unrouted = remove(unrouted, item);
+        }
+
+        routes = all.length == 0 ? Routes.EMPTY_ROUTES : new Routes(all, unrouted, topics, idKeys, idBuckets);
+        if (errors != null && !isRegistered(all, item.observer))
+            errors.forget(item.observer);
+        return true;
+    }
+
+    /**
+     * The failure count of an observer is dropped with its last registration
+     */
+    private static boolean isRegistered(PriorityEventObserver<?>[] all, EventObserver<?> observer) {
+        for (PriorityEventObserver<?> item : all)
+            if (item.observer.equals(observer))
+                return true;
+        return false;
+    }
+
+    /**
+     * Routes of the observers, in the order they come in
+     */
+    private static Routes rebuild(List<PriorityEventObserver<?>> observers) {
+        List<PriorityEventObserver<?>> unrouted = new ArrayList<>();
+        Map<String, List<PriorityEventObserver<?>>> topics = new HashMap<>();
+        SortedMap<Integer, List<PriorityEventObserver<?>>> ids = new TreeMap<>();
+        for (PriorityEventObserver<?> item : observers) {
+            SubscriberInfo info = item.info;
+            if (info.hasTopics()) {
+                for (String topic : info.topics())
+                    add(topics, topic, item);
+
+            } else if (info.hasIds()) {
+                for (int id : info.ids())
+                    add(ids, id, item);
+
+            } else {
+                unrouted.add(item);
+            }
+        }
+
+        Map<String, PriorityEventObserver<?>[]> topicBuckets = new HashMap<>();
+        for (Map.Entry<String, List<PriorityEventObserver<?>>> entry : topics.entrySet())
+            topicBuckets.put(entry.getKey(), toArray(entry.getValue()));
+
+        int[] idKeys = new int[ids.size()];
+        PriorityEventObserver<?>[][] idBuckets = new PriorityEventObserver<?>[ids.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, List<PriorityEventObserver<?>>> entry : ids.entrySet()) {
+            idKeys[i] = entry.getKey();
+            idBuckets[i++] = toArray(entry.getValue());
+        }
+
+        return new Routes(toArray(observers), toArray(unrouted), topicBuckets, idKeys, idBuckets);
+    }
+
+    private static <K> void add(Map<K, List<PriorityEventObserver<?>>> map, K key, PriorityEventObserver<?> observer) {
+        List<PriorityEventObserver<?>> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        // same id or topic twice
+        if (list.isEmpty() || list.get(list.size() - 1) != observer)
+            list.add(observer);
     }
 
-    public synchronized Observers.Handler<E> register(EventObserver<E> observer, int priority) {
-        Observers.Handler<E> handler = observers.register(new PriorityEventObserver<E>(observer, priority));
-        ((ObserversDecorator<E>) observers).order();
-        return handler;
+    private static PriorityEventObserver<?>[] toArray(List<PriorityEventObserver<?>> observers) {
+        return observers.isEmpty() ? EMPTY : observers.toArray(new PriorityEventObserver<?>[observers.size()]);
+    }
+
+    private static PriorityEventObserver<?>[] insert(PriorityEventObserver<?>[] current, PriorityEventObserver<?> observer) {
+        int index = upperBound(current, observer.priority);
+        if (index > 0 && current[index - 1] == observer)
+            return current;
+
+        PriorityEventObserver<?>[] result = new PriorityEventObserver<?>[current.length + 1];
+        System.arraycopy(current, 0, result, 0, index);
+        result[index] = observer;
+        System.arraycopy(current, index, result, index + 1, current.length - index);
+        return result;
+    }
+
+    /**
+     * @return the same array if there's no such observer
+     */
+    private static PriorityEventObserver<?>[] remove(PriorityEventObserver<?>[] current, PriorityEventObserver<?> observer) {
+        // observers of the same priority are right before the upper bound
+        int index = upperBound(current, observer.priority) - 1;
+        while (index >= 0 && current[index] != observer && current[index].priority == observer.priority)
+            index--;
+        if (index < 0 || current[index] != observer)
+            return current;
+
+        if (current.length == 1)
+            return EMPTY;
+
+        PriorityEventObserver<?>[] result = new PriorityEventObserver<?>[current.length - 1];
+        System.arraycopy(current, 0, result, 0, index);
+        System.arraycopy(current, index + 1, result, index, current.length - index - 1);
+        return result;
+    }
+
+    /**
+     * index of the first observer of lower priority
+     */
+    private static int upperBound(PriorityEventObserver<?>[] observers, int priority) {
+        int low = 0;
+        int high = observers.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (observers[mid].priority >= priority)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
     }
 
-    private static class PriorityEventObserver<E> implements EventObserver<E> {
-        EventObserver<E> observer;
-        int priority;
+    static class PriorityEventObserver<E> implements EventObserver<E> {
+        final EventObserver<E> observer;
+        final SubscriberInfo info;
+        final int priority;
+        final boolean routed;
+        final boolean batch;
+        // null if the master is held strongly
+        final Reference<?> master;
+        // order of registering, assigned under the lock before publishing
+        long sequence;
 
-        private PriorityEventObserver(EventObserver<E> observer, int priority) {
+        PriorityEventObserver(EventObserver<E> observer, SubscriberInfo info, Reference<?> master) {
             this.observer = observer;
-            this.priority = priority;
+            this.master = master;
+            this.info = info;
+            this.priority = info.getPriority();
+            this.routed = info.hasTopics() || info.hasIds();
+            this.batch = observer instanceof BatchEventObserver;
+        }
+
+        boolean accepts(Message event) {
+            return info.accepts(event);
         }
 
         public void onEvent(E event) {
             observer.onEvent(event);
         }
+
+        boolean precedes(PriorityEventObserver<?> other) {
+            return priority > other.priority || (priority == other.priority && sequence < other.sequence);
+        }
+    }
+
+    static final class Parallel {
+        final ForkJoinPool pool;
+        final int threshold;
+
+        Parallel(ForkJoinPool pool, int threshold) {
+            assert pool != null;
+            if (threshold < 2)
+                throw new IllegalArgumentException("threshold must be 2 or more");
+            this.pool = pool;
+            this.threshold = threshold;
+        }
+    }
+
+    private static final class Failure {
+        private final PriorityEventObserver<?> observer;
+        private final RuntimeException error;
+
+        private Failure(PriorityEventObserver<?> observer, RuntimeException error) {
+            this.observer = observer;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Splits the observers in halves down to the leaf size
+     */
+    private static final class Fanout<E> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PriorityEventObserver<?>[] observers;
+        private final int from;
+        private final int to;
+        private final int leaf;
+        private final E event;
+        private final EventBusListener listener;
+        private final Queue<Failure> failures;
+
+        private Fanout(PriorityEventObserver<?>[] observers, int from, int to, int leaf, E event,
+                       EventBusListener listener, Queue<Failure> failures) {
+            this.observers = observers;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.event = event;
+            this.listener = listener;
+            this.failures = failures;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            if (to - from <= leaf) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        deliver((PriorityEventObserver<E>) observers[i], event, listener);
+                    } catch (RuntimeException e) {
+                        failures.add(new Failure(observers[i], e));
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Fanout<E>(observers, from, middle, leaf, event, listener, failures),
+                    new Fanout<E>(observers, middle, to, leaf, event, listener, failures));
+        }
     }
 
-    private static class ObserversDecorator<E> extends Observers<E> {
-        private void order() {
-            List<EventObserver<E>> copy = new ArrayList<EventObserver<E>>(getAll());
-            Collections.sort(copy, new PriorityComparator());
-            clear();
-            addAll(copy);
+    /**
+     * Immutable once published
+     */
+    static final class Routes {
+        static final Routes EMPTY_ROUTES = new Routes(EMPTY, EMPTY,
+                Collections.<String, PriorityEventObserver<?>[]>emptyMap(), new int[0], new PriorityEventObserver<?>[0][]);
+
+        private final PriorityEventObserver<?>[] all;
+        private final PriorityEventObserver<?>[] unrouted;
+        private final Map<String, PriorityEventObserver<?>[]> topics;
+        // sorted, for binary search without boxing the id
+        private final int[] idKeys;
+        private final PriorityEventObserver<?>[][] idBuckets;
+        private final boolean routed;
+
+        private Routes(PriorityEventObserver<?>[] all, PriorityEventObserver<?>[] unrouted,
+                       Map<String, PriorityEventObserver<?>[]> topics, int[] idKeys, PriorityEventObserver<?>[][] idBuckets) {
+            this.all = all;
+            this.unrouted = unrouted;
+            this.topics = topics;
+            this.idKeys = idKeys;
+            this.idBuckets = idBuckets;
+            this.routed = !topics.isEmpty() || idKeys.length > 0;
+        }
+
+        PriorityEventObserver<?>[] all() {
+            return all;
+        }
+    }
+
+    /**
+     * Gives out the handlers, the observers are kept by Subscribers
+     */
+    private class SortedObservers extends Observers<E> {
+        @Override
+        public int notify(E event) {
+            return Subscribers.this.notify(event);
+        }
+
+        @Override
+        public int notifyAndClear(E event) {
+            return Subscribers.this.notifyAndClear(event);
+        }
+
+        @Override
+        public void clear() {
+            Subscribers.this.clear();
+        }
+
+        @Override
+        public List<EventObserver<E>> getAll() {
+            return Subscribers.this.getAll();
+        }
+
+        @Override
+        public Handler<E> register(EventObserver<E> observer) {
+            insert((PriorityEventObserver<E>) observer);
+            return createHandler(observer);
+        }
+
+        @Override
+        public boolean unregister(EventObserver<E> observer) {
+            return remove(observer);
+        }
+
+        @Override
+        public int unregisterAll(Collection<? extends EventObserver<E>> toRemove) {
+            if (toRemove.isEmpty())
+                return 0;
+
+            Set<EventObserver<?>> set = Collections.newSetFromMap(new IdentityHashMap<EventObserver<?>, Boolean>());
+            set.addAll(toRemove);
+            return removeAll(set);
         }
     }
 
-    private static class PriorityComparator implements Comparator<EventObserver<?>> {
+    static class PriorityComparator implements Comparator<EventObserver<?>> {
         public int compare(EventObserver<?> o1, EventObserver<?> o2) {
             return ((PriorityEventObserver<?>) o1).priority ==
                     ((PriorityEventObserver<?>) o2).priority ? 0 :
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.brooth.jeta.inject;
+
+import org.brooth.jeta.MasterClassController;
+import org.brooth.jeta.metasitory.Metasitory;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Class level InjectController. Metacodes are searched once, then the plan can be applied
+ * to any number of masters of exactly that class, from any thread, with no metasitory lookups.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class InjectPlan<M> extends MasterClassController<M, InjectMetacode<M>> {
+
+    private final InjectMetacode<M>[] plan;
+
+    @SuppressWarnings("unchecked")
+    public InjectPlan(Metasitory metasitory, Class<M> masterClass) {
+        super(metasitory, masterClass, Inject.class);
+        plan = metacodes.toArray((InjectMetacode<M>[]) new InjectMetacode<?>[metacodes.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public InjectPlan(Metasitory metasitory, Class<M> masterClass, Class<? extends Annotation> alias) {
+        super(metasitory, masterClass, new HashSet<>(Arrays.asList(Inject.class, alias)));
+        plan = metacodes.toArray((InjectMetacode<M>[]) new InjectMetacode<?>[metacodes.size()]);
+    }
+
+    public void inject(MetaScope<?> scope, M master) {
+        assert master != null && master.getClass() == masterClass;
+        for (InjectMetacode<M> metacode : plan)
+            metacode.inject(scope, master);
+    }
+}
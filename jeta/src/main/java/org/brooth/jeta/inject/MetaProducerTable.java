@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.brooth.jeta.inject;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entity class to meta producer lookup of a generated MetaScope, a hash lookup whatever the number of
+ * the entities. The table of a scope that extends another one starts as a copy of that one's table,
+ * so there's a single lookup for the whole chain of the scopes.
+ * <p>
+ * Used by metacode. Filled in the static initializer of the MetaScope, read-only after that.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public final class MetaProducerTable {
+
+    /**
+     * One per MetaScope class, gets the meta producer by its index in the scope
+     */
+    public interface Getter {
+        MetaProducer<?> get(MetaScope<?> metaScope, int index);
+
+        /**
+         * creates the singleton, or returns the created one
+         */
+        Object getInstance(MetaScope<?> metaScope, int index);
+    }
+
+    /**
+     * Generated MetaScopes give out their tables
+     */
+    public interface Holder {
+        MetaProducerTable getMetaProducerTable();
+    }
+
+    private final Getter getter;
+    private final Map<Class<?>, Slot> slots;
+
+    /**
+     * @param ext  table of the scope the scope extends, null if none
+     * @param size number of the scope's own entities
+     */
+    public MetaProducerTable(MetaProducerTable ext, int size, Getter getter) {
+        assert getter != null;
+        this.getter = getter;
+        if (ext == null) {
+            slots = new IdentityHashMap<>(size);
+        } else {
+            slots = new IdentityHashMap<>(ext.slots.size() + size);
+            slots.putAll(ext.slots);
+        }
+    }
+
+    /**
+     * The entity of the scope hides the one of the extended scope with the same class
+     */
+    public MetaProducerTable put(Class<?> entityClass, int index) {
+        slots.put(entityClass, new Slot(getter, index, null));
+        return this;
+    }
+
+    /**
+     * Singleton that can be created with no arguments, so it's created by {@link SingletonWarmUp}
+     *
+     * @param dependencies entities injected into the singleton
+     */
+    public MetaProducerTable putSingleton(Class<?> entityClass, int index, Class<?>... dependencies) {
+        slots.put(entityClass, new Slot(getter, index, dependencies));
+        return this;
+    }
+
+    /**
+     * @return null if the scope has no such entity
+     */
+    public MetaProducer<?> get(Class<?> entityClass, MetaScope<?> metaScope) {
+        Slot slot = slots.get(entityClass);
+        return slot == null ? null : slot.getter.get(metaScope, slot.index);
+    }
+
+    /**
+     * @throws IllegalArgumentException if it's not a singleton of the table
+     */
+    public Object getSingleton(Class<?> entityClass, MetaScope<?> metaScope) {
+        Slot slot = slots.get(entityClass);
+        if (slot == null || slot.dependencies == null)
+            throw new IllegalArgumentException(entityClass.getName() + " is not a singleton of the scope");
+        return slot.getter.getInstance(metaScope, slot.index);
+    }
+
+    /**
+     * @return entity classes of the singletons to the classes of the entities they inject
+     */
+    public Map<Class<?>, Class<?>[]> getSingletons() {
+        Map<Class<?>, Class<?>[]> result = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, Slot> entry : slots.entrySet())
+            if (entry.getValue().dependencies != null)
+                result.put(entry.getKey(), entry.getValue().dependencies.clone());
+        return result;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    private static final class Slot {
+        private final Getter getter;
+        private final int index;
+        // null if it's not a singleton
+        private final Class<?>[] dependencies;
+
+        private Slot(Getter getter, int index, Class<?>[] dependencies) {
+            this.getter = getter;
+            this.index = index;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.brooth.jeta.inject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the singletons of a meta scope before they are needed, so the first requests don't pay for them.
+ * A singleton is created once the singletons it injects are, the independent ones in parallel on the executor.
+ * Singletons whose dependencies form a cycle are created with no order, as they would be on the first use.
+ * <p>
+ * Only the singletons that can be created with no arguments are warmed up. Singletons are kept by the meta scope,
+ * so warm up the one that serves the requests.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class SingletonWarmUp {
+
+    private final MetaScope<?> metaScope;
+    private final MetaProducerTable table;
+
+    public SingletonWarmUp(MetaScope<?> metaScope) {
+        assert metaScope != null;
+        if (!(metaScope instanceof MetaProducerTable.Holder))
+            throw new IllegalArgumentException(metaScope.getClass().getName() + " has no meta producer table");
+
+        this.metaScope = metaScope;
+        this.table = ((MetaProducerTable.Holder) metaScope).getMetaProducerTable();
+    }
+
+    /**
+     * Blocks until all the singletons are created. If the executor rejects a singleton, it's created on
+     * the calling thread.
+     *
+     * @return init time of each singleton in nanoseconds, in the order they were created
+     * @throws IllegalStateException if any of the singletons failed, the others are created anyway
+     */
+    public Map<Class<?>, Long> run(Executor executor) throws InterruptedException {
+        assert executor != null;
+
+        Map<Class<?>, Node> nodes = nodes();
+        CountDownLatch done = new CountDownLatch(nodes.size());
+        Queue<Class<?>> order = new ConcurrentLinkedQueue<>();
+        Map<Class<?>, Long> times = new ConcurrentHashMap<>();
+        Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+
+        for (Node node : nodes.values())
+            if (node.pending.get() == 0)
+                submit(executor, new Task(node, executor, done, order, times, errors));
+        done.await();
+
+        if (!errors.isEmpty()) {
+            Iterator<RuntimeException> iterator = errors.iterator();
+            IllegalStateException e = new IllegalStateException("Failed to warm up " + errors.size() +
+                    " of " + nodes.size() + " singletons", iterator.next());
+            while (iterator.hasNext())
+                e.addSuppressed(iterator.next());
+            throw e;
+        }
+
+        Map<Class<?>, Long> result = new LinkedHashMap<>();
+        for (Class<?> entityClass : order)
+            result.put(entityClass, times.get(entityClass));
+        return result;
+    }
+
+    /**
+     * Dependency graph of the singletons, the cycles broken
+     */
+    private Map<Class<?>, Node> nodes() {
+        Map<Class<?>, Class<?>[]> singletons = table.getSingletons();
+        Map<Class<?>, Node> nodes = new LinkedHashMap<>();
+        for (Class<?> entityClass : singletons.keySet())
+            nodes.put(entityClass, new Node(entityClass));
+        for (Node node : nodes.values())
+            for (Class<?> dependency : singletons.get(node.entityClass)) {
+                Node dependencyNode = nodes.get(dependency);
+                // injected entities that are not singletons are created with the singleton itself
+                if (dependencyNode != null && dependencyNode != node && !node.dependencies.contains(dependencyNode))
+                    node.dependencies.add(dependencyNode);
+            }
+
+        // whatever is left after sorting is in a cycle or depends on one
+        Map<Node, Integer> pending = new HashMap<>();
+        Map<Node, List<Node>> dependents = new HashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodes.values()) {
+            pending.put(node, node.dependencies.size());
+            if (node.dependencies.isEmpty())
+                ready.add(node);
+            for (Node dependency : node.dependencies) {
+                List<Node> list = dependents.get(dependency);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    dependents.put(dependency, list);
+                }
+                list.add(node);
+            }
+        }
+        Set<Node> sorted = new HashSet<>();
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            sorted.add(node);
+            List<Node> list = dependents.get(node);
+            if (list != null)
+                for (Node dependent : list)
+                    if (pending.put(dependent, pending.get(dependent) - 1) == 1)
+                        ready.add(dependent);
+        }
+        for (Node node : nodes.values())
+            if (!sorted.contains(node))
+                node.dependencies.clear();
+
+        for (Node node : nodes.values()) {
+            node.pending.set(node.dependencies.size());
+            for (Node dependency : node.dependencies)
+                dependency.dependents.add(node);
+        }
+        return nodes;
+    }
+
+    private static void submit(Executor executor, Task task) {
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            task.run();
+        }
+    }
+
+    private static final class Node {
+        private final Class<?> entityClass;
+        private final List<Node> dependencies = new ArrayList<>();
+        private final List<Node> dependents = new ArrayList<>();
+        // dependencies not created yet
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Node(Class<?> entityClass) {
+            this.entityClass = entityClass;
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final Node node;
+        private final Executor executor;
+        private final CountDownLatch done;
+        private final Queue<Class<?>> order;
+        private final Map<Class<?>, Long> times;
+        private final Queue<RuntimeException> errors;
+
+        private Task(Node node, Executor executor, CountDownLatch done, Queue<Class<?>> order,
+                     Map<Class<?>, Long> times, Queue<RuntimeException> errors) {
+            this.node = node;
+            this.executor = executor;
+            this.done = done;
+            this.order = order;
+            this.times = times;
+            this.errors = errors;
+        }
+
+        public void run() {
+            try {
+                long start = System.nanoTime();
+                table.getSingleton(node.entityClass, metaScope);
+                times.put(node.entityClass, System.nanoTime() - start);
+                order.add(node.entityClass);
+
+            } catch (RuntimeException e) {
+                // the dependents are still created, they get the dependency on their own
+                errors.add(e);
+
+            } finally {
+                for (Node dependent : node.dependents)
+                    if (dependent.pending.decrementAndGet() == 0)
+                        submit(executor, new Task(dependent, executor, done, order, times, errors));
+                done.countDown();
+            }
+        }
+    }
+}
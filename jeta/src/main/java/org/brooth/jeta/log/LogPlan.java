@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.brooth.jeta.log;
+
+import org.brooth.jeta.MasterClassController;
+import org.brooth.jeta.metasitory.Metasitory;
+
+/**
+ * Class level LogController, see {@link org.brooth.jeta.inject.InjectPlan}
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class LogPlan<M> extends MasterClassController<M, LogMetacode<M>> {
+
+    private final LogMetacode<M>[] plan;
+
+    @SuppressWarnings("unchecked")
+    public LogPlan(Metasitory metasitory, Class<M> masterClass) {
+        super(metasitory, masterClass, Log.class);
+        plan = metacodes.toArray((LogMetacode<M>[]) new LogMetacode<?>[metacodes.size()]);
+    }
+
+    public void createLoggers(M master, NamedLoggerProvider<?> loggerProvider) {
+        assert master != null && master.getClass() == masterClass;
+        assert loggerProvider != null;
+
+        for (LogMetacode<M> metacode : plan)
+            metacode.applyLogger(master, loggerProvider);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.metasitory;
+
+import org.brooth.jeta.Metacode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Memoizes search results per criteria. Results are dropped all at once if other metasitory is added
+ * through this one, or, in case of MapMetasitory, if its revision is changed by loading a container.
+ * Cached metacode instances are shared between the searches, so they must be stateless (the generated ones are).
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class CachedMetasitory implements Metasitory {
+
+    private final Metasitory metasitory;
+    private final AtomicReference<Cache> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachedMetasitory(Metasitory metasitory) {
+        assert metasitory != null;
+        this.metasitory = metasitory;
+        this.cache = new AtomicReference<>(new Cache(revision()));
+    }
+
+    @Override
+    public Collection<Metacode<?>> search(Criteria criteria) {
+        Cache cache = actualCache();
+        Collection<Metacode<?>> result = cache.results.get(criteria);
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        misses.incrementAndGet();
+        result = Collections.unmodifiableCollection(metasitory.search(criteria));
+        Collection<Metacode<?>> quicker = cache.results.putIfAbsent(criteria, result);
+        return quicker != null ? quicker : result;
+    }
+
+    @Override
+    public void add(Metasitory other) {
+        if (other instanceof CachedMetasitory)
+            other = ((CachedMetasitory) other).metasitory;
+
+        metasitory.add(other);
+        invalidate();
+    }
+
+    public void invalidate() {
+        cache.set(new Cache(revision()));
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return cache.get().results.size();
+    }
+
+    public Metasitory getMetasitory() {
+        return metasitory;
+    }
+
+    private Cache actualCache() {
+        int revision = revision();
+        Cache current = cache.get();
+        if (current.revision == revision)
+            return current;
+
+        Cache actual = new Cache(revision);
+        cache.compareAndSet(current, actual);
+        return actual;
+    }
+
+    private int revision() {
+        return metasitory instanceof MapMetasitory ? ((MapMetasitory) metasitory).getRevision() : 0;
+    }
+
+    private static final class Cache {
+        private final int revision;
+        private final ConcurrentMap<Criteria, Collection<Metacode<?>>> results =
+                new ConcurrentHashMap<>();
+
+        private Cache(int revision) {
+            this.revision = revision;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.metasitory;
+
+import org.brooth.jeta.Metacode;
+
+import java.lang.annotation.Annotation;
+import java.util.*;
+
+/**
+ * MapMetasitory that keeps an annotation to masters index and a superclass chain index,
+ * both rebuilt each time a container is loaded. Search doesn't scan the containers,
+ * it goes through the index entries only and allocates the result list.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class IndexedMapMetasitory extends MapMetasitory {
+
+    // assigned from super constructor, must not be initialized here
+    private volatile Index index;
+
+    public IndexedMapMetasitory(String metaPackage) {
+        super(metaPackage);
+    }
+
+    public IndexedMapMetasitory(String metaPackage, ClassLoader loader) {
+        super(metaPackage, loader);
+    }
+
+    public IndexedMapMetasitory(MapMetasitoryContainer container) {
+        super(container);
+    }
+
+    @Override
+    protected void onMetaChanged(Map<Class<?>, MapMetasitoryContainer.Context> meta) {
+        index = new Index(meta);
+    }
+
+    @Override
+    public Collection<Metacode<?>> search(Criteria criteria) {
+        if (Criteria.VERSION > SUPPORTED_CRITERIA_VERSION)
+            throw new IllegalArgumentException("Criteria version " + Criteria.VERSION + " not supported");
+        if (criteria.getUsesAll() != null && criteria.getUsesAll().isEmpty())
+            throw new IllegalArgumentException("criteria.useAll is empty");
+
+        return index.search(criteria);
+    }
+
+    /**
+     * Immutable, so it's safe to search without locking
+     */
+    private static final class Index {
+        private static final MapMetasitoryContainer.Context[] EMPTY = new MapMetasitoryContainer.Context[0];
+
+        private final Map<Class<?>, MapMetasitoryContainer.Context> meta;
+        private final Map<Class<?>, MapMetasitoryContainer.Context[]> chains;
+        private final Map<Class<?>, MapMetasitoryContainer.Context[]> uses;
+        // masters with no annotations, they satisfy any usesAll
+        private final MapMetasitoryContainer.Context[] bare;
+
+        private Index(Map<Class<?>, MapMetasitoryContainer.Context> snapshot) {
+            meta = snapshot;
+            chains = new IdentityHashMap<>(meta.size());
+
+            Map<Class<?>, List<MapMetasitoryContainer.Context>> usesLists = new IdentityHashMap<>();
+            List<MapMetasitoryContainer.Context> bareList = new ArrayList<>();
+            List<MapMetasitoryContainer.Context> chain = new ArrayList<>();
+            // a context is visited once, only its own annotations may repeat
+            Set<Class<?>> annotations = new HashSet<>();
+            for (Map.Entry<Class<?>, MapMetasitoryContainer.Context> entry : meta.entrySet()) {
+                MapMetasitoryContainer.Context context = entry.getValue();
+
+                chain.clear();
+                Class<?> clazz = entry.getKey();
+                while (clazz != null && clazz != Object.class) {
+                    MapMetasitoryContainer.Context item = meta.get(clazz);
+                    if (item != null)
+                        chain.add(item);
+                    clazz = clazz.getSuperclass();
+                }
+                chains.put(entry.getKey(), chain.toArray(new MapMetasitoryContainer.Context[chain.size()]));
+
+                if (context.annotations.length == 0)
+                    bareList.add(context);
+
+                annotations.clear();
+                for (Class<?> annotation : context.annotations) {
+                    if (!annotations.add(annotation))
+                        continue;
+                    List<MapMetasitoryContainer.Context> list = usesLists.get(annotation);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        usesLists.put(annotation, list);
+                    }
+                    list.add(context);
+                }
+            }
+
+            uses = new IdentityHashMap<>(usesLists.size());
+            for (Map.Entry<Class<?>, List<MapMetasitoryContainer.Context>> entry : usesLists.entrySet())
+                uses.put(entry.getKey(), entry.getValue().toArray(
+                        new MapMetasitoryContainer.Context[entry.getValue().size()]));
+            bare = bareList.toArray(new MapMetasitoryContainer.Context[bareList.size()]);
+        }
+
+        private Collection<Metacode<?>> search(Criteria criteria) {
+            Set<Class<? extends Annotation>> usesAny = criteria.getUsesAny();
+            Set<Class<? extends Annotation>> usesAll = criteria.getUsesAll();
+
+            if (criteria.getMasterEq() != null) {
+                MapMetasitoryContainer.Context context = meta.get(criteria.getMasterEq());
+                if (context == null || !matches(context, usesAny, usesAll))
+                    return Collections.emptyList();
+                if (criteria.getMasterEqDeep() != null && !contains(chainOf(criteria.getMasterEqDeep()), context))
+                    return Collections.emptyList();
+
+                return Collections.<Metacode<?>>singletonList(context.metacodeProvider.get());
+            }
+
+            List<Metacode<?>> result = null;
+            if (criteria.getMasterEqDeep() != null) {
+                MapMetasitoryContainer.Context[] chain = chainOf(criteria.getMasterEqDeep());
+                for (MapMetasitoryContainer.Context context : chain)
+                    if (matches(context, usesAny, usesAll))
+                        result = add(result, context, chain.length);
+
+            } else if (usesAll != null) {
+                // a master is added on the list of its first annotation only, so no duplicates
+                for (Class<?> annotation : usesAll) {
+                    MapMetasitoryContainer.Context[] contexts = usesOf(annotation);
+                    for (MapMetasitoryContainer.Context context : contexts)
+                        if (context.annotations[0] == annotation && matches(context, usesAny, usesAll))
+                            result = add(result, context, contexts.length);
+                }
+                if (usesAny == null)
+                    for (MapMetasitoryContainer.Context context : bare)
+                        result = add(result, context, bare.length);
+
+            } else if (usesAny != null) {
+                // a master is added on the list of its first annotation used in criteria
+                for (Class<?> annotation : usesAny) {
+                    MapMetasitoryContainer.Context[] contexts = usesOf(annotation);
+                    for (MapMetasitoryContainer.Context context : contexts)
+                        if (firstUsed(context, usesAny) == annotation)
+                            result = add(result, context, contexts.length);
+                }
+
+            } else {
+                if (meta.isEmpty())
+                    return Collections.emptyList();
+
+                result = new ArrayList<>(meta.size());
+                for (MapMetasitoryContainer.Context context : meta.values())
+                    result.add(context.metacodeProvider.get());
+            }
+
+            if (result == null)
+                return Collections.emptyList();
+            return result;
+        }
+
+        private MapMetasitoryContainer.Context[] chainOf(Class<?> masterClass) {
+            Class<?> clazz = masterClass;
+            while (clazz != null && clazz != Object.class) {
+                MapMetasitoryContainer.Context[] chain = chains.get(clazz);
+                if (chain != null)
+                    return chain;
+                clazz = clazz.getSuperclass();
+            }
+            return EMPTY;
+        }
+
+        private MapMetasitoryContainer.Context[] usesOf(Class<?> annotation) {
+            MapMetasitoryContainer.Context[] contexts = uses.get(annotation);
+            return contexts == null ? EMPTY : contexts;
+        }
+
+        private static List<Metacode<?>> add(List<Metacode<?>> result, MapMetasitoryContainer.Context context, int capacity) {
+            if (result == null)
+                result = new ArrayList<>(capacity);
+            result.add(context.metacodeProvider.get());
+            return result;
+        }
+
+        private static boolean matches(MapMetasitoryContainer.Context context, Set<Class<? extends Annotation>> usesAny,
+                                       Set<Class<? extends Annotation>> usesAll) {
+            if (usesAny != null && firstUsed(context, usesAny) == null)
+                return false;
+            if (usesAll != null)
+                for (Class<?> annotation : context.annotations)
+                    if (!usesAll.contains(annotation))
+                        return false;
+            return true;
+        }
+
+        private static Class<?> firstUsed(MapMetasitoryContainer.Context context, Set<Class<? extends Annotation>> uses) {
+            for (Class<?> annotation : context.annotations)
+                if (uses.contains(annotation))
+                    return annotation;
+            return null;
+        }
+
+        private static boolean contains(MapMetasitoryContainer.Context[] contexts, MapMetasitoryContainer.Context context) {
+            for (MapMetasitoryContainer.Context item : contexts)
+                if (item == context)
+                    return true;
+            return false;
+        }
+    }
+}
@@ -21,11 +21,13 @@ import org.brooth.jeta.Metacode;
 import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Support ordering through containers. So, items from first container go first
+ * Support ordering through containers. So, items from first container go first.
+ * <p>
+ * Containers are loaded rarely, so instead of guarding the map with a lock each change copies it
+ * and publishes the copy. Search works with the published snapshot and never locks.
  *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
@@ -33,11 +35,11 @@ public class MapMetasitory implements Metasitory {
 
     public static final int SUPPORTED_CRITERIA_VERSION = 1;
 
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
-    private Lock readLock = lock.readLock();
-    private Lock writeLock = lock.writeLock();
+    private final Lock writeLock = new ReentrantLock();
 
-    private Map<Class<?>, MapMetasitoryContainer.Context> meta;
+    // never modified once published
+    private volatile Map<Class<?>, MapMetasitoryContainer.Context> meta;
+    private volatile int revision = 0;
 
     @Nullable
     private ClassLoader $defaultClassLoader;
@@ -89,11 +91,7 @@ public class MapMetasitory implements Metasitory {
     public void loadContainer(MapMetasitoryContainer container) {
         try {
             writeLock.lock();
-
-            if (meta == null)
-                meta = container.get();
-            else
-                meta.putAll(container.get());
+            publish(container.get());
 
         } finally {
             writeLock.unlock();
@@ -105,28 +103,52 @@ public class MapMetasitory implements Metasitory {
             throw new UnsupportedOperationException("Only other MapMetasitory is supported");
         try {
             writeLock.lock();
-            meta.putAll(((MapMetasitory) other).meta);
+            publish(((MapMetasitory) other).meta);
 
         } finally {
             writeLock.unlock();
         }
     }
 
+    private void publish(Map<Class<?>, MapMetasitoryContainer.Context> items) {
+        Map<Class<?>, MapMetasitoryContainer.Context> snapshot;
+        if (meta == null) {
+            snapshot = new IdentityHashMap<>(items);
+        } else {
+            snapshot = new IdentityHashMap<>(meta);
+            snapshot.putAll(items);
+        }
+
+        onMetaChanged(snapshot);
+        meta = snapshot;
+        revision++;
+    }
+
+    /**
+     * Incremented each time a container is loaded or other metasitory is added.
+     * Used by CachedMetasitory to drop search results of previous revisions
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Invoked under the write lock each time a container is loaded or other metasitory is added,
+     * right before the snapshot is published. Subclasses may rebuild their own search structures here.
+     * The snapshot must not be modified.
+     */
+    protected void onMetaChanged(Map<Class<?>, MapMetasitoryContainer.Context> meta) {
+    }
+
     public Collection<Metacode<?>> search(Criteria criteria) {
         if (Criteria.VERSION > SUPPORTED_CRITERIA_VERSION)
             throw new IllegalArgumentException("Criteria version " + Criteria.VERSION + " not supported");
 
         Map<Class<?>, MapMetasitoryContainer.Context> selection = meta;
-        try {
-            readLock.lock();
-            selection = masterEq(selection, criteria);
-            selection = masterEqDeep(selection, criteria);
-            selection = usesAll(selection, criteria);
-            selection = usesAny(selection, criteria);
-
-        } finally {
-            readLock.unlock();
-        }
+        selection = masterEq(selection, criteria);
+        selection = masterEqDeep(selection, criteria);
+        selection = usesAll(selection, criteria);
+        selection = usesAny(selection, criteria);
 
         if (selection.isEmpty())
             return Collections.emptyList();
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.observer;
+
+import java.util.*;
+
+/**
+ * Keeps the observers in an array that is replaced on every change, so notifying reads the array once
+ * and loops over it by index, with no iterator per event. Registering is a copy of the array, as
+ * it is for {@link Observers}, so it suits the subjects that notify much more often than they change.
+ * <p>
+ * A {@link Subject} field declared as {@code ArrayObservers<E>} gets this implementation.
+ *
+ * @param <E>
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class ArrayObservers<E> extends Observers<E> {
+
+    private static final EventObserver<?>[] EMPTY = new EventObserver<?>[0];
+
+    private volatile EventObserver<?>[] observers = EMPTY;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int notify(E event) {
+        EventObserver<?>[] observers = this.observers;
+        int i = 0;
+        RuntimeException first = null;
+        while (true) {
+            try {
+                for (; i < observers.length; i++)
+                    ((EventObserver<E>) observers[i]).onEvent(event);
+                break;
+
+            } catch (RuntimeException e) {
+                ObserverErrors errors = getErrors();
+                if (errors == null)
+                    throw e;
+                first = errors.onError(observers[i], event, e, first);
+                i++;
+            }
+        }
+
+        if (first != null)
+            throw first;
+        return observers.length;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ObserverErrors errors = getErrors();
+        if (errors != null)
+            for (EventObserver<?> observer : observers)
+                errors.forget(observer);
+        observers = EMPTY;
+    }
+
+    /**
+     * @return read-only snapshot of the observers
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<EventObserver<E>> getAll() {
+        return Collections.unmodifiableList(Arrays.asList((EventObserver<E>[]) observers));
+    }
+
+    @Override
+    protected synchronized void addAll(List<EventObserver<E>> list) {
+        EventObserver<?>[] current = observers;
+        EventObserver<?>[] result = Arrays.copyOf(current, current.length + list.size());
+        for (int i = 0; i < list.size(); i++)
+            result[current.length + i] = list.get(i);
+        observers = result;
+    }
+
+    @Override
+    public synchronized Handler<E> register(EventObserver<E> observer) {
+        EventObserver<?>[] current = observers;
+        EventObserver<?>[] result = Arrays.copyOf(current, current.length + 1);
+        result[current.length] = observer;
+        observers = result;
+        return createHandler(observer);
+    }
+
+    @Override
+    public synchronized boolean unregister(EventObserver<E> observer) {
+        EventObserver<?>[] current = observers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(observer)) {
+                EventObserver<?>[] result = new EventObserver<?>[current.length - 1];
+                System.arraycopy(current, 0, result, 0, i);
+                System.arraycopy(current, i + 1, result, i, current.length - i - 1);
+                observers = result.length == 0 ? EMPTY : result;
+
+                ObserverErrors errors = getErrors();
+                if (errors != null && !Arrays.asList(result).contains(observer))
+                    errors.forget(observer);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized int unregisterAll(Collection<? extends EventObserver<E>> toRemove) {
+        if (toRemove.isEmpty())
+            return 0;
+
+        Map<EventObserver<?>, int[]> counts = countOf(toRemove);
+        EventObserver<?>[] current = observers;
+        EventObserver<?>[] result = new EventObserver<?>[current.length];
+        Set<EventObserver<?>> removed = new HashSet<>();
+        int size = 0;
+        for (EventObserver<?> observer : current) {
+            int[] count = counts.get(observer);
+            if (count != null && count[0] > 0) {
+                count[0]--;
+                removed.add(observer);
+            } else {
+                result[size++] = observer;
+            }
+        }
+        if (size == current.length)
+            return 0;
+
+        observers = size == 0 ? EMPTY : Arrays.copyOf(result, size);
+        ObserverErrors errors = getErrors();
+        if (errors != null) {
+            removed.removeAll(Arrays.asList(observers));
+            for (EventObserver<?> observer : removed)
+                errors.forget(observer);
+        }
+        return current.length - size;
+    }
+}
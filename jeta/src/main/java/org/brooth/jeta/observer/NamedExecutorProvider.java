@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.observer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors for the observers that are not {@link Observe.Mode#INLINE}
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public interface NamedExecutorProvider {
+    /**
+     * @param name executor name, empty for the default one
+     * @return null if there's no such executor
+     */
+    Executor get(String name);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.observer;
+
+/**
+ * Striped locks the generated observables read and create their observers under, once per master instance.
+ * Masters are spread over the stripes by identity, so creating them on many threads doesn't contend
+ * on a single monitor.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public final class ObservableLocks {
+
+    private static final int STRIPES = 64;
+    private static final Object[] locks = new Object[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new Object();
+    }
+
+    private ObservableLocks() {
+    }
+
+    public static Object lockOf(Object master) {
+        int hash = System.identityHashCode(master);
+        // identity hashes may differ in the high bits only
+        hash ^= (hash >>> 16);
+        return locks[hash & (STRIPES - 1)];
+    }
+}
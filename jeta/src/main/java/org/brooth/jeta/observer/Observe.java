@@ -20,9 +20,36 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 
 /**
+ * Observer method. By default it is invoked on the thread that notifies the observers,
+ * see {@link #mode()} to move it to an executor.
+ *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
 @Target(ElementType.METHOD)
 public @interface Observe {
     Class<?>[] value();
+
+    Mode mode() default Mode.INLINE;
+
+    /**
+     * Name of the executor for EXECUTOR and SERIAL modes, resolved by {@link NamedExecutorProvider}
+     * once the observer is registered. Empty for the provider's default one.
+     */
+    String executor() default "";
+
+    enum Mode {
+        /**
+         * on the notifying thread
+         */
+        INLINE,
+        /**
+         * on the executor, the events may be delivered concurrently and out of order
+         */
+        EXECUTOR,
+        /**
+         * on the executor, one at a time in the order they were notified. Each registered observer
+         * has its own queue, so the observers don't wait for each other
+         */
+        SERIAL
+    }
 }
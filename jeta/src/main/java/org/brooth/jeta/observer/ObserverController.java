@@ -34,15 +34,38 @@ public class ObserverController<M> extends MasterController<M, ObserverMetacode<
     }
 
     public ObserverHandler registerObserver(Object observable, Class<?> observableClass) {
+        return registerObserver(observable, observableClass, null);
+    }
+
+    public ObserverHandler registerObserver(Object observable, NamedExecutorProvider executors) {
+        assert observable != null;
+        return registerObserver(observable, observable.getClass(), executors);
+    }
+
+    /**
+     * @param executors resolves the executors of the observers that are not {@link Observe.Mode#INLINE},
+     *                  once, on registering
+     * @throws IllegalArgumentException if an executor can't be resolved
+     */
+    public ObserverHandler registerObserver(Object observable, Class<?> observableClass, NamedExecutorProvider executors) {
         assert observable != null;
         assert observableClass != null;
 
         ObserverHandler handler = new ObserverHandler();
-        for (ObserverMetacode<M> observer : metacodes) {
-            ObserverHandler observerHandler = observer.applyObservers(master, observable, observableClass);
-            if (observerHandler == null)
-                throw new IllegalArgumentException("Not an observer of " + observable.getClass());
-            handler.add(observerHandler);
+        try {
+            for (ObserverMetacode<M> observer : metacodes) {
+                ObserverHandler observerHandler = observer instanceof ExecutorObserverMetacode ?
+                        ((ExecutorObserverMetacode<M>) observer).applyObservers(master, observable, observableClass, executors) :
+                        observer.applyObservers(master, observable, observableClass);
+                if (observerHandler == null)
+                    throw new IllegalArgumentException("Not an observer of " + observable.getClass());
+                handler.add(observerHandler);
+            }
+
+        } catch (RuntimeException e) {
+            // none or all
+            handler.unregisterAll();
+            throw e;
         }
 
         return handler;
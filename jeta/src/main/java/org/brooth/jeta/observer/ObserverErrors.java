@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.brooth.jeta.observer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What notify does if an observer throws, and how many times each one did.
+ * Shared by the observers of a subject, or by all the subscribers of an event bus.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class ObserverErrors {
+
+    public enum Policy {
+        /**
+         * the exception is thrown at once, the rest of the observers don't get the event
+         */
+        FAIL_FAST,
+        /**
+         * the rest of the observers get the event, then the first exception is thrown,
+         * the others are added to it as suppressed
+         */
+        ISOLATE,
+        /**
+         * the exceptions go to the {@link ErrorHandler}, the rest of the observers get the event
+         */
+        HANDLE
+    }
+
+    public interface ErrorHandler {
+        /**
+         * Throw an exception to stop notifying
+         */
+        void onError(EventObserver<?> observer, Object event, RuntimeException error);
+    }
+
+    private volatile Policy policy;
+    private volatile ErrorHandler handler;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final ConcurrentHashMap<EventObserver<?>, AtomicLong> failuresMap = new ConcurrentHashMap<>();
+
+    public ObserverErrors() {
+        this(Policy.FAIL_FAST);
+    }
+
+    public ObserverErrors(Policy policy) {
+        setPolicy(policy);
+    }
+
+    public ObserverErrors(ErrorHandler handler) {
+        setHandler(handler);
+    }
+
+    /**
+     * @param policy FAIL_FAST or ISOLATE, see {@link #setHandler(ErrorHandler)} for HANDLE
+     */
+    public void setPolicy(Policy policy) {
+        assert policy != null;
+        if (policy == Policy.HANDLE)
+            throw new IllegalArgumentException("Policy HANDLE needs a handler, use setHandler()");
+        this.policy = policy;
+        this.handler = null;
+    }
+
+    /**
+     * Sets HANDLE policy
+     */
+    public void setHandler(ErrorHandler handler) {
+        assert handler != null;
+        this.handler = handler;
+        this.policy = Policy.HANDLE;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Counted per observer till its last registration with the subject is removed. If the observer is
+     * registered with several subjects sharing these errors, the count is of them all, and the subject
+     * that removes its last registration drops it.
+     */
+    public long getFailureCount(EventObserver<?> observer) {
+        AtomicLong count = failuresMap.get(observer);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Drops the count of the observer, once it's unregistered, see {@link #getFailureCount(EventObserver)}
+     */
+    public void forget(EventObserver<?> observer) {
+        failuresMap.remove(observer);
+    }
+
+    /**
+     * Counts the failure and applies the policy. Called by notify loops, off their common path.
+     *
+     * @param first returned by the previous call while notifying this event, null for the first failure
+     * @return the exception to throw once all the observers are notified, null if none
+     */
+    public RuntimeException onError(EventObserver<?> observer, Object event, RuntimeException error,
+                                    RuntimeException first) {
+        failures.incrementAndGet();
+        AtomicLong count = failuresMap.get(observer);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong quicker = failuresMap.putIfAbsent(observer, count);
+            if (quicker != null)
+                count = quicker;
+        }
+        count.incrementAndGet();
+
+        switch (policy) {
+            case ISOLATE:
+                if (first == null)
+                    return error;
+                first.addSuppressed(error);
+                return first;
+
+            case HANDLE:
+                ErrorHandler handler = this.handler;
+                if (handler == null)
+                    throw error;
+                handler.onError(observer, event, error);
+                return first;
+
+            default:
+                throw error;
+        }
+    }
+}
@@ -16,36 +16,33 @@
 
 package org.brooth.jeta.observer;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 
 /**
+ * Keeps the handlers by observable class and event class, so unregistering looks up the handlers
+ * instead of scanning all of them, and removes the ones of the same observers at once.
+ * <p>
+ * Breaking change: the handlers are no longer exposed to subclasses as the protected {@code handlers} list.
+ * Its records were private, so merge the handlers with {@link #add(ObserverHandler)} and drop them
+ * with {@link #unregisterAll()} instead.
+ * <p>
  * Not thread-safe
  *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
 public class ObserverHandler {
 
-    private static class Record {
-        Class<?> row;
-        Class<?> column;
-        Observers.Handler<?> handler;
-
-        Record(Class<?> row, Class<?> column, Observers.Handler<?> handler) {
-            this.row = row;
-            this.column = column;
-            this.handler = handler;
-        }
-    }
-
-    protected final List<Record> handlers = new ArrayList<Record>();
+    // observable class -> event class -> handlers
+    private final Map<Class<?>, Map<Class<?>, List<Observers.Handler<?>>>> rows =
+            new HashMap<Class<?>, Map<Class<?>, List<Observers.Handler<?>>>>();
+    // event class -> observable classes having its handlers
+    private final Map<Class<?>, Set<Class<?>>> columns = new HashMap<Class<?>, Set<Class<?>>>();
 
     /**
      * used by metacode
      */
     public void add(Class<?> observableClass, Class<?> eventClass, Observers.Handler<?> handler) {
-        handlers.add(new Record(observableClass, eventClass, handler));
+        handlersOf(observableClass, eventClass).add(handler);
     }
 
     /**
@@ -54,7 +51,9 @@ public class ObserverHandler {
      * @param other @ObserverHandler of another event/observable
      */
     public void add(ObserverHandler other) {
-        handlers.addAll(other.handlers);
+        for (Map.Entry<Class<?>, Map<Class<?>, List<Observers.Handler<?>>>> row : other.rows.entrySet())
+            for (Map.Entry<Class<?>, List<Observers.Handler<?>>> cell : row.getValue().entrySet())
+                handlersOf(row.getKey(), cell.getKey()).addAll(cell.getValue());
     }
 
     /**
@@ -65,18 +64,22 @@ public class ObserverHandler {
      * @return number of unregistered events
      */
     public int unregister(Class<?> eventClass, Class<?> observableClass) {
-        int result = 0;
-        Iterator<Record> records = handlers.iterator();
-        while (records.hasNext()) {
-            Record record = records.next();
-            if (record.row == observableClass && record.column == eventClass) {
-                if (record.handler.unregister())
-                    result++;
-                records.remove();
-            }
-        }
+        Map<Class<?>, List<Observers.Handler<?>>> row = rows.get(observableClass);
+        if (row == null)
+            return 0;
+
+        List<Observers.Handler<?>> cell = row.remove(eventClass);
+        if (cell == null)
+            return 0;
 
-        return result;
+        if (row.isEmpty())
+            rows.remove(observableClass);
+        Set<Class<?>> column = columns.get(eventClass);
+        column.remove(observableClass);
+        if (column.isEmpty())
+            columns.remove(eventClass);
+
+        return Observers.unregisterHandlers(cell);
     }
 
     /**
@@ -86,17 +89,18 @@ public class ObserverHandler {
      * @return number of unregistered events
      */
     public int unregister(Class<?> eventClass) {
-        int result = 0;
-        Iterator<Record> records = handlers.iterator();
-        while (records.hasNext()) {
-            Record record = records.next();
-            if (record.column == eventClass) {
-                if (record.handler.unregister())
-                    result++;
-                records.remove();
-            }
+        Set<Class<?>> column = columns.remove(eventClass);
+        if (column == null)
+            return 0;
+
+        List<Observers.Handler<?>> result = new ArrayList<Observers.Handler<?>>();
+        for (Class<?> observableClass : column) {
+            Map<Class<?>, List<Observers.Handler<?>>> row = rows.get(observableClass);
+            result.addAll(row.remove(eventClass));
+            if (row.isEmpty())
+                rows.remove(observableClass);
         }
-        return result;
+        return Observers.unregisterHandlers(result);
     }
 
     /**
@@ -106,17 +110,19 @@ public class ObserverHandler {
      * @return number of unregistered events
      */
     public int unregisterAll(Class<?> observableClass) {
-        int result = 0;
-        Iterator<Record> records = handlers.iterator();
-        while (records.hasNext()) {
-            Record record = records.next();
-            if (record.row == observableClass) {
-                if (record.handler.unregister())
-                    result++;
-                records.remove();
-            }
+        Map<Class<?>, List<Observers.Handler<?>>> row = rows.remove(observableClass);
+        if (row == null)
+            return 0;
+
+        List<Observers.Handler<?>> result = new ArrayList<Observers.Handler<?>>();
+        for (Map.Entry<Class<?>, List<Observers.Handler<?>>> cell : row.entrySet()) {
+            result.addAll(cell.getValue());
+            Set<Class<?>> column = columns.get(cell.getKey());
+            column.remove(observableClass);
+            if (column.isEmpty())
+                columns.remove(cell.getKey());
         }
-        return result;
+        return Observers.unregisterHandlers(result);
     }
 
     /**
@@ -125,12 +131,34 @@ public class ObserverHandler {
      * @return number of unregistered events
      */
     public int unregisterAll() {
-        int result = 0;
-        for (Record record : handlers)
-            if (record.handler.unregister())
-                result++;
+        List<Observers.Handler<?>> result = new ArrayList<Observers.Handler<?>>();
+        for (Map<Class<?>, List<Observers.Handler<?>>> row : rows.values())
+            for (List<Observers.Handler<?>> cell : row.values())
+                result.addAll(cell);
+
+        rows.clear();
+        columns.clear();
+        return Observers.unregisterHandlers(result);
+    }
 
-        handlers.clear();
-        return result;
+    private List<Observers.Handler<?>> handlersOf(Class<?> observableClass, Class<?> eventClass) {
+        Map<Class<?>, List<Observers.Handler<?>>> row = rows.get(observableClass);
+        if (row == null) {
+            row = new HashMap<Class<?>, List<Observers.Handler<?>>>();
+            rows.put(observableClass, row);
+        }
+        List<Observers.Handler<?>> cell = row.get(eventClass);
+        if (cell == null) {
+            cell = new ArrayList<Observers.Handler<?>>();
+            row.put(eventClass, cell);
+
+            Set<Class<?>> column = columns.get(eventClass);
+            if (column == null) {
+                column = new HashSet<Class<?>>();
+                columns.put(eventClass, column);
+            }
+            column.add(observableClass);
+        }
+        return cell;
     }
 }
@@ -16,7 +16,7 @@
 
 package org.brooth.jeta.observer;
 
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -26,11 +26,32 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class Observers<E> {
 
     private final List<EventObserver<E>> observers = new CopyOnWriteArrayList<EventObserver<E>>();
+    // null to fail fast, as if the policy were FAIL_FAST, with no counting
+    private volatile ObserverErrors errors;
 
     public int notify(E event) {
         int result = observers.size();
-        for (EventObserver<E> observer : observers)
-            observer.onEvent(event);
+        Iterator<EventObserver<E>> iterator = observers.iterator();
+        EventObserver<E> observer = null;
+        RuntimeException first = null;
+        while (true) {
+            try {
+                while (iterator.hasNext()) {
+                    observer = iterator.next();
+                    observer.onEvent(event);
+                }
+                break;
+
+            } catch (RuntimeException e) {
+                ObserverErrors errors = this.errors;
+                if (errors == null)
+                    throw e;
+                first = errors.onError(observer, event, e, first);
+            }
+        }
+
+        if (first != null)
+            throw first;
         return result;
     }
 
@@ -40,7 +61,11 @@ public class Observers<E> {
         return result;
     }
 
-    public void clear() {
+    public synchronized void clear() {
+        ObserverErrors errors = this.errors;
+        if (errors != null)
+            for (EventObserver<E> observer : observers)
+                errors.forget(observer);
         observers.clear();
     }
 
@@ -48,29 +73,158 @@ public class Observers<E> {
         return observers;
     }
 
-    protected void addAll(List<EventObserver<E>> list) {
+    protected synchronized void addAll(List<EventObserver<E>> list) {
         observers.addAll(list);
     }
 
-    public Handler<E> register(EventObserver<E> observer) {
+    public synchronized Handler<E> register(EventObserver<E> observer) {
         observers.add(observer);
-        return new Handler<E>(observers, observer);
+        return createHandler(observer);
+    }
+
+    /**
+     * for the subclasses keeping the observers on their own
+     */
+    protected Handler<E> createHandler(EventObserver<E> observer) {
+        return new Handler<E>(this, observer);
+    }
+
+    /**
+     * Removes one registration of the observer. Its failure count is dropped with the last one
+     */
+    public synchronized boolean unregister(EventObserver<E> observer) {
+        if (!observers.remove(observer))
+            return false;
+
+        ObserverErrors errors = this.errors;
+        if (errors != null && !observers.contains(observer))
+            errors.forget(observer);
+        return true;
+    }
+
+    /**
+     * Removes a registration per observer in the collection, as {@link #unregister(EventObserver)} does,
+     * with a single copy of the list if no registration of these observers is left.
+     * Subclasses keeping the observers on their own must override it along with {@link #unregister(EventObserver)}
+     *
+     * @return number of observers removed
+     */
+    public synchronized int unregisterAll(Collection<? extends EventObserver<E>> toRemove) {
+        if (toRemove.isEmpty())
+            return 0;
+
+        Map<EventObserver<?>, int[]> counts = countOf(toRemove);
+        Map<EventObserver<?>, int[]> registered = new HashMap<>();
+        for (EventObserver<E> observer : observers) {
+            if (counts.containsKey(observer)) {
+                int[] count = registered.get(observer);
+                if (count == null)
+                    registered.put(observer, new int[]{1});
+                else
+                    count[0]++;
+            }
+        }
+        if (registered.isEmpty())
+            return 0;
+
+        int result = 0;
+        boolean partly = false;
+        for (Map.Entry<EventObserver<?>, int[]> entry : registered.entrySet()) {
+            int count = entry.getValue()[0];
+            int removing = Math.min(count, counts.get(entry.getKey())[0]);
+            result += removing;
+            if (removing < count)
+                partly = true;
+            entry.getValue()[0] = removing;
+        }
+
+        ObserverErrors errors = this.errors;
+        if (!partly) {
+            observers.removeAll(registered.keySet());
+            if (errors != null)
+                for (EventObserver<?> observer : registered.keySet())
+                    errors.forget(observer);
+            return result;
+        }
+
+        for (Map.Entry<EventObserver<?>, int[]> entry : registered.entrySet())
+            for (int i = 0; i < entry.getValue()[0]; i++)
+                observers.remove(entry.getKey());
+        if (errors != null)
+            for (EventObserver<?> observer : registered.keySet())
+                if (!observers.contains(observer))
+                    errors.forget(observer);
+        return result;
+    }
+
+    /**
+     * How many times each observer is in the collection
+     */
+    protected static Map<EventObserver<?>, int[]> countOf(Collection<? extends EventObserver<?>> observers) {
+        Map<EventObserver<?>, int[]> result = new HashMap<>();
+        for (EventObserver<?> observer : observers) {
+            int[] count = result.get(observer);
+            if (count == null)
+                result.put(observer, new int[]{1});
+            else
+                count[0]++;
+        }
+        return result;
+    }
+
+    /**
+     * Unregisters the handlers, the ones of the same Observers at once
+     *
+     * @return number of observers unregistered
+     */
+    @SuppressWarnings("unchecked")
+    public static int unregisterHandlers(Collection<? extends Handler<?>> handlers) {
+        if (handlers.isEmpty())
+            return 0;
+        if (handlers.size() == 1)
+            return handlers.iterator().next().unregister() ? 1 : 0;
+
+        Map<Observers<?>, List<EventObserver<?>>> grouped = new IdentityHashMap<>();
+        for (Handler<?> handler : handlers) {
+            List<EventObserver<?>> list = grouped.get(handler.observers);
+            if (list == null) {
+                list = new ArrayList<>();
+                grouped.put(handler.observers, list);
+            }
+            list.add(handler.observer);
+        }
+
+        int result = 0;
+        for (Map.Entry<Observers<?>, List<EventObserver<?>>> entry : grouped.entrySet())
+            result += ((Observers<Object>) entry.getKey()).unregisterAll((List<EventObserver<Object>>) (List<?>) entry.getValue());
+        return result;
+    }
+
+    /**
+     * @param errors null to fail fast, the default
+     */
+    public void setErrors(ObserverErrors errors) {
+        this.errors = errors;
+    }
+
+    public ObserverErrors getErrors() {
+        return errors;
     }
 
     /**
      * @param <E> event type
      */
     public static final class Handler<E> {
-        private List<EventObserver<E>> observers;
+        private Observers<E> observers;
         private EventObserver<E> observer;
 
-        private Handler(List<EventObserver<E>> observers, EventObserver<E> observer) {
+        private Handler(Observers<E> observers, EventObserver<E> observer) {
             this.observers = observers;
             this.observer = observer;
         }
 
         public boolean unregister() {
-            return observers.remove(observer);
+            return observers.unregister(observer);
         }
     }
 }
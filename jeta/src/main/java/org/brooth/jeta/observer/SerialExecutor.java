@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brooth.jeta.observer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the tasks on the executor one at a time, in the order they were submitted.
+ * A task that throws doesn't stop the others, its exception goes to the executor.
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // true while a task drains the queue
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public SerialExecutor(Executor executor) {
+        assert executor != null;
+        this.executor = executor;
+    }
+
+    /**
+     * Resolves the executor of an observer, used by metacode
+     *
+     * @throws IllegalArgumentException if there's no such executor
+     */
+    public static Executor of(NamedExecutorProvider provider, String name, boolean serial) {
+        if (provider == null)
+            throw new IllegalArgumentException("No executor provider to resolve executor '" + name + "'");
+        Executor executor = provider.get(name);
+        if (executor == null)
+            throw new IllegalArgumentException("Executor '" + name + "' not found");
+        return serial ? new SerialExecutor(executor) : executor;
+    }
+
+    public void execute(Runnable task) {
+        assert task != null;
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch (RuntimeException e) {
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private final Runnable drain = new Runnable() {
+        public void run() {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+            } finally {
+                draining.set(false);
+                // a task might be queued after the last poll, but before the release
+                if (!tasks.isEmpty())
+                    schedule();
+            }
+        }
+    };
+}
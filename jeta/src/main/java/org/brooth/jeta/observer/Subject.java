@@ -20,6 +20,8 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 
 /**
+ * Field type is {@link Observers}, or {@link ArrayObservers} for the subjects notifying at a high rate
+ *
  * @author Oleg Khalidov (brooth@gmail.com)
  */
 @Target(ElementType.FIELD)
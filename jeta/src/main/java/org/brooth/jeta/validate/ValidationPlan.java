@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.brooth.jeta.validate;
+
+import org.brooth.jeta.MasterClassController;
+import org.brooth.jeta.metasitory.Metasitory;
+
+import java.lang.annotation.Annotation;
+import java.util.*;
+
+/**
+ * Class level ValidationController, see {@link org.brooth.jeta.inject.InjectPlan}
+ *
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class ValidationPlan<M> extends MasterClassController<M, ValidatorMetacode<M>> {
+
+    private final ValidatorMetacode<M>[] plan;
+
+    public ValidationPlan(Metasitory metasitory, Class<M> masterClass) {
+        this(metasitory, masterClass, new HashSet<>(Arrays.asList(
+                Validate.class,
+                org.brooth.jeta.validate.alias.NotNull.class,
+                org.brooth.jeta.validate.alias.NotBlank.class,
+                org.brooth.jeta.validate.alias.NotEmpty.class)));
+    }
+
+    @SuppressWarnings("unchecked")
+    public ValidationPlan(Metasitory metasitory, Class<M> masterClass, Set<Class<? extends Annotation>> validators) {
+        super(metasitory, masterClass, validators);
+        plan = metacodes.toArray((ValidatorMetacode<M>[]) new ValidatorMetacode<?>[metacodes.size()]);
+    }
+
+    public void validate(M master) throws ValidationException {
+        List<String> errors = validateSafe(master);
+        if (!errors.isEmpty())
+            throw new ValidationException(errors);
+    }
+
+    public List<String> validateSafe(M master) {
+        assert master != null && master.getClass() == masterClass;
+
+        List<String> errors = null;
+        for (ValidatorMetacode<M> metacode : plan) {
+            List<String> metacodeErrors = metacode.applyValidation(master);
+            if (!metacodeErrors.isEmpty()) {
+                if (errors == null)
+                    errors = new ArrayList<>();
+                errors.addAll(metacodeErrors);
+            }
+        }
+
+        return errors == null ? Collections.<String>emptyList() : errors;
+    }
+}
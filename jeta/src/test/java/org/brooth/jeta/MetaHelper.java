@@ -24,16 +24,21 @@ import org.brooth.jeta.eventbus.EventBus;
 import org.brooth.jeta.eventbus.SubscriberController;
 import org.brooth.jeta.eventbus.SubscriptionHandler;
 import org.brooth.jeta.inject.InjectController;
+import org.brooth.jeta.inject.InjectPlan;
 import org.brooth.jeta.inject.MetaScope;
 import org.brooth.jeta.inject.MetaScopeController;
 import org.brooth.jeta.inject.StaticInjectController;
 import org.brooth.jeta.log.LogController;
+import org.brooth.jeta.log.LogPlan;
 import org.brooth.jeta.log.NamedLoggerProvider;
+import org.brooth.jeta.metasitory.CachedMetasitory;
+import org.brooth.jeta.metasitory.IndexedMapMetasitory;
 import org.brooth.jeta.metasitory.MapMetasitory;
 import org.brooth.jeta.metasitory.MapMetasitoryContainer;
 import org.brooth.jeta.metasitory.Metasitory;
 import org.brooth.jeta.observer.ObservableController;
 import org.brooth.jeta.observer.ObserverController;
+import org.brooth.jeta.observer.NamedExecutorProvider;
 import org.brooth.jeta.observer.ObserverHandler;
 import org.brooth.jeta.proxy.ProxyController;
 import org.brooth.jeta.tests.inject.DefaultScope;
@@ -68,11 +73,16 @@ public class MetaHelper {
     }
 
     private MetaHelper() {
-        if(new Random().nextBoolean()) {
-            metasitory = new MapMetasitory(new org.brooth.jeta.tests.MetasitoryContainer());
+        Random random = new Random();
+        boolean indexed = random.nextBoolean();
+        MapMetasitory mapMetasitory;
+        if(random.nextBoolean()) {
+            org.brooth.jeta.tests.MetasitoryContainer container = new org.brooth.jeta.tests.MetasitoryContainer();
+            mapMetasitory = indexed ? new IndexedMapMetasitory(container) : new MapMetasitory(container);
         } else {
-            metasitory = new MapMetasitory("org.brooth.jeta.tests");
+            mapMetasitory = indexed ? new IndexedMapMetasitory("org.brooth.jeta.tests") : new MapMetasitory("org.brooth.jeta.tests");
         }
+        metasitory = random.nextBoolean() ? new CachedMetasitory(mapMetasitory) : mapMetasitory;
 
         defaultScope = new MetaScopeController<DefaultScope>(metasitory, new DefaultScope()).get();
         bus = new BaseEventBus();
@@ -91,6 +101,14 @@ public class MetaHelper {
         new InjectController(getInstance().metasitory, master, Inject.class).inject(scope);
     }
 
+    public static <M> void injectMeta(InjectPlan<M> plan, M master) {
+        plan.inject(getInstance().defaultScope, master);
+    }
+
+    public static <M> InjectPlan<M> injectPlan(Class<M> masterClass) {
+        return new InjectPlan<M>(getInstance().metasitory, masterClass, Inject.class);
+    }
+
     public static void injectStaticMeta(Class<?> masterClass) {
         new StaticInjectController(getInstance().metasitory, masterClass, Inject.class).inject(getInstance().defaultScope);
     }
@@ -111,6 +129,10 @@ public class MetaHelper {
         return new SubscriberController<Object>(getInstance().metasitory, master).registerSubscriber(getEventBus());
     }
 
+    public static SubscriptionHandler registerSubscriber(EventBus bus, Object master) {
+        return new SubscriberController<Object>(getInstance().metasitory, master).registerSubscriber(bus);
+    }
+
     public static void createObservable(Object master) {
         new ObservableController<Object>(getInstance().metasitory, master).createObservable();
     }
@@ -119,6 +141,10 @@ public class MetaHelper {
         return new ObserverController<Object>(getInstance().metasitory, observer).registerObserver(observable);
     }
 
+    public static ObserverHandler registerObserver(Object observer, Object observable, NamedExecutorProvider executors) {
+        return new ObserverController<Object>(getInstance().metasitory, observer).registerObserver(observable, executors);
+    }
+
     public static ValidationController validationController(Object master) {
         return new ValidationController(getInstance().metasitory, master);
     }
@@ -147,6 +173,14 @@ public class MetaHelper {
         new LogController(getInstance().metasitory, master).createLoggers(getInstance().loggerProvider);
     }
 
+    public static <M> void createLogger(LogPlan<M> plan, M master) {
+        plan.createLoggers(master, getInstance().loggerProvider);
+    }
+
+    public static <M> LogPlan<M> logPlan(Class<M> masterClass) {
+        return new LogPlan<M>(getInstance().metasitory, masterClass);
+    }
+
     public static <M> SingletonMetacode<M> getSingleton(Class<M> masterClass) {
         return new SingletonController<M>(getInstance().metasitory, masterClass).getMetacode();
     }
@@ -22,9 +22,23 @@ import org.brooth.jeta.Logger;
 import org.brooth.jeta.MetaHelper;
 import org.brooth.jeta.eventbus.*;
 import org.brooth.jeta.log.Log;
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.ObserverErrors;
+import org.brooth.jeta.observer.Observers;
 import org.hamcrest.MatcherAssert;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
@@ -110,6 +124,244 @@ public class EventBusTest extends BaseTest {
         handler.unregisterAll();
     }
 
+    @Test
+    public void testAsyncBusOrder() throws InterruptedException {
+        logger.debug("testAsyncBusOrder()");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AsyncEventBus bus = new AsyncEventBus(executor, 16, AsyncEventBus.OverflowPolicy.BLOCK);
+
+        final int count = 1000;
+        final CountDownLatch latch = new CountDownLatch(count * 2);
+        final List<Integer> fast = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> slow = Collections.synchronizedList(new ArrayList<Integer>());
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                fast.add(event.id());
+                latch.countDown();
+            }
+        }, 0);
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                if (event.id() % 100 == 0)
+                    sleepQuietly(10);
+                slow.add(event.id());
+                latch.countDown();
+            }
+        }, 0);
+
+        for (int i = 0; i < count; i++)
+            bus.publish(new MessageOne(i, "async"));
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        executor.shutdown();
+
+        for (int i = 0; i < count; i++) {
+            assertThat(fast.get(i), is(i));
+            assertThat(slow.get(i), is(i));
+        }
+        assertThat(bus.getDispatchedCount(), is(count * 2L));
+        assertThat(bus.getQueueDepth(), is(0L));
+        assertThat(bus.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void testAsyncBusDrop() {
+        logger.debug("testAsyncBusDrop()");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        AsyncEventBus bus = new AsyncEventBus(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 2, AsyncEventBus.OverflowPolicy.DROP);
+
+        final List<Integer> ids = new ArrayList<>();
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                ids.add(event.id());
+            }
+        }, 0);
+
+        for (int i = 0; i < 5; i++)
+            bus.publish(new MessageOne(i, "drop"));
+
+        assertThat(ids, empty());
+        assertThat(tasks, hasSize(1));
+        assertThat(bus.getQueueDepth(), is(2L));
+        assertThat(bus.getDroppedCount(), is(3L));
+
+        tasks.remove(0).run();
+        assertThat(ids, contains(0, 1));
+        assertThat(bus.getQueueDepth(), is(0L));
+        assertThat(tasks, empty());
+    }
+
+    @Test
+    public void testAsyncBusErrors() {
+        logger.debug("testAsyncBusErrors()");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        AsyncEventBus bus = new AsyncEventBus(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 16, AsyncEventBus.OverflowPolicy.BLOCK);
+
+        final List<EventObserver<?>> handled = new ArrayList<>();
+        bus.getErrors().setHandler(new ObserverErrors.ErrorHandler() {
+            public void onError(EventObserver<?> observer, Object event, RuntimeException error) {
+                handled.add(observer);
+            }
+        });
+        Observers.Handler<MessageOne> handler = bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                throw new IllegalStateException();
+            }
+        }, 0);
+
+        bus.publish(new MessageOne(1, "async"));
+        bus.publish(new MessageOne(2, "async"));
+        tasks.remove(0).run();
+        assertThat(handled, hasSize(2));
+        assertThat(bus.getErrors().getFailureCount(handled.get(0)), is(2L));
+
+        handler.unregister();
+        assertThat(bus.getErrors().getFailureCount(handled.get(0)), is(0L));
+        assertThat(bus.getErrors().getFailureCount(), is(2L));
+    }
+
+    @Test
+    public void testAsyncBusBlockSelf() {
+        logger.debug("testAsyncBusBlockSelf()");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        final AsyncEventBus bus = new AsyncEventBus(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 1, AsyncEventBus.OverflowPolicy.BLOCK);
+
+        final List<Integer> ids = new ArrayList<>();
+        final List<Integer> failed = new ArrayList<>();
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                ids.add(event.id());
+                if (event.id() == 0) {
+                    bus.publish(new MessageOne(1, "self"));
+                    // its own queue is full, waiting for the space would never end
+                    try {
+                        bus.publish(new MessageOne(2, "self"));
+                    } catch (IllegalStateException e) {
+                        failed.add(2);
+                    }
+                }
+            }
+        }, 0);
+
+        bus.publish(new MessageOne(0, "self"));
+        tasks.remove(0).run();
+        assertThat(ids, contains(0, 1));
+        assertThat(failed, contains(2));
+        assertThat(bus.getQueueDepth(), is(0L));
+        assertThat(tasks, empty());
+    }
+
+    @Test
+    public void testAsyncBusConflate() {
+        logger.debug("testAsyncBusConflate()");
+
+        final List<Runnable> tasks = new ArrayList<>();
+        AsyncEventBus bus = new AsyncEventBus(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 16, AsyncEventBus.OverflowPolicy.BLOCK, false, true);
+
+        final List<String> received = new ArrayList<>();
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                received.add(event.id() + ":" + event.topic());
+            }
+        }, 0);
+
+        // keyed by topic
+        bus.publish(new MessageOne(1, "a"));
+        bus.publish(new MessageOne(2, "b"));
+        bus.publish(new MessageOne(3, "a"));
+        bus.publish(new MessageOne(4, "a"));
+        // keyed by id if no topic
+        bus.publish(new MessageOne(5, null));
+        bus.publish(new MessageOne(5, null));
+        bus.publish(new MessageOne(6, null));
+
+        assertThat(bus.getQueueDepth(), is(4L));
+        assertThat(bus.getConflatedCount(), is(3L));
+        tasks.remove(0).run();
+        assertThat(received, contains("4:a", "2:b", "5:null", "6:null"));
+
+        // delivered ones aren't replaced
+        bus.publish(new MessageOne(7, "a"));
+        tasks.remove(0).run();
+        assertThat(received, hasItem("7:a"));
+        assertThat(bus.getConflatedCount(), is(3L));
+        assertThat(bus.getQueueDepth(), is(0L));
+    }
+
+    @Test
+    public void testRingBufferBus() throws InterruptedException {
+        logger.debug("testRingBufferBus()");
+
+        RingBufferEventBus bus = new RingBufferEventBus(8, RingBufferEventBus.WaitStrategy.PARK);
+
+        // generated subscribers work unchanged
+        SubscribeHolder subscriber = new SubscribeHolder();
+        SubscriptionHandler handler = MetaHelper.registerSubscriber(bus, subscriber);
+        bus.publish(new MessageOne(1, "one"));
+        bus.publish(new MessageTwo(2, "two"));
+        for (int i = 0; i < 100 && subscriber.onMessageTwoInvokes == 0; i++)
+            sleepQuietly(10);
+        assertThat(subscriber.onMessageOneInvokes, is(1));
+        assertThat(subscriber.onMessageTwoInvokes, is(1));
+        handler.unregisterAll();
+
+        // the ring wraps many times, the publisher waits for the slow subscriber
+        final int count = 10000;
+        final CountDownLatch latch = new CountDownLatch(count * 2);
+        final List<Integer> fast = new ArrayList<>();
+        final List<Integer> slow = new ArrayList<>();
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                fast.add(event.id());
+                latch.countDown();
+            }
+        }, 0);
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                if (event.id() % 1000 == 0)
+                    sleepQuietly(5);
+                slow.add(event.id());
+                latch.countDown();
+            }
+        }, 0);
+
+        for (int i = 0; i < count; i++)
+            bus.publish(new MessageOne(i, "ring"));
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        // sequences move right after the delivery
+        for (int i = 0; i < 100 && bus.getBacklog() > 0; i++)
+            sleepQuietly(10);
+        assertThat(bus.getBacklog(), is(0L));
+        bus.shutdown();
+
+        for (int i = 0; i < count; i++) {
+            assertThat(fast.get(i), is(i));
+            assertThat(slow.get(i), is(i));
+        }
+        assertThat(subscriber.onMessageOneInvokes, is(1));
+    }
+
     public static class HighPrioritySubscribeHolder {
         @Log
         Logger logger;
@@ -166,6 +418,321 @@ public class EventBusTest extends BaseTest {
         handler.unregisterAll();
     }
 
+    public static class HierarchySubscribeHolder {
+        @Log
+        Logger logger;
+
+        final List<String> invokes = new ArrayList<>();
+
+        public HierarchySubscribeHolder() {
+            MetaHelper.createLogger(this);
+        }
+
+        @Subscribe
+        void onMessage(Message message) {
+            logger.debug("onMessage(id: %d, topic: %s)", message.id(), message.topic());
+            invokes.add("message");
+        }
+
+        @Subscribe(priority = 1)
+        void onBaseMessage(BaseMessage message) {
+            logger.debug("onBaseMessage(id: %d, topic: %s)", message.id(), message.topic());
+            invokes.add("base");
+        }
+
+        @Subscribe
+        void onMessageOne(MessageOne message) {
+            logger.debug("onMessageOne(id: %d, topic: %s)", message.id(), message.topic());
+            invokes.add("one");
+        }
+    }
+
+    @Test
+    public void testHierarchicalPublish() {
+        logger.debug("testHierarchicalPublish()");
+
+        BaseEventBus bus = new BaseEventBus(true);
+        HierarchySubscribeHolder subscriber = new HierarchySubscribeHolder();
+        SubscriptionHandler handler = MetaHelper.registerSubscriber(bus, subscriber);
+
+        bus.publish(new MessageOne(1, "one"));
+        assertThat(subscriber.invokes, contains("base", "one", "message"));
+
+        subscriber.invokes.clear();
+        bus.publish(new MessageTwo(2, "two"));
+        assertThat(subscriber.invokes, contains("base", "message"));
+
+        // cached dispatch is dropped on registering to a supertype
+        HierarchySubscribeHolder other = new HierarchySubscribeHolder();
+        SubscriptionHandler otherHandler = MetaHelper.registerSubscriber(bus, other);
+        subscriber.invokes.clear();
+        bus.publish(new MessageOne(3, "three"));
+        assertThat(subscriber.invokes, contains("base", "one", "message"));
+        assertThat(other.invokes, contains("base", "one", "message"));
+
+        // and on unregistering
+        otherHandler.unregisterAll();
+        other.invokes.clear();
+        bus.publish(new MessageOne(4, "four"));
+        assertThat(other.invokes, empty());
+        assertThat(subscriber.invokes, hasSize(6));
+
+        handler.unregisterAll();
+        subscriber.invokes.clear();
+        bus.publish(new MessageOne(5, "five"));
+        assertThat(subscriber.invokes, empty());
+    }
+
+    @Test
+    public void testPriorityOrder() {
+        logger.debug("testPriorityOrder()");
+
+        BaseEventBus bus = new BaseEventBus();
+        final List<String> invokes = new ArrayList<>();
+        int[] priorities = {0, 5, -5, 5, 0, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        List<Observers.Handler<MessageOne>> handlers = new ArrayList<>();
+        for (int i = 0; i < priorities.length; i++) {
+            final String name = priorities[i] + ":" + i;
+            handlers.add(bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+                public void onEvent(MessageOne event) {
+                    invokes.add(name);
+                }
+            }, priorities[i]));
+        }
+
+        bus.publish(new MessageOne(1, "one"));
+        assertThat(invokes, contains(Integer.MAX_VALUE + ":5", "5:1", "5:3", "0:0", "0:4", "-5:2", Integer.MIN_VALUE + ":6"));
+
+        assertThat(handlers.get(3).unregister(), is(true));
+        assertThat(handlers.get(3).unregister(), is(false));
+        assertThat(handlers.get(0).unregister(), is(true));
+        invokes.clear();
+        bus.publish(new MessageOne(2, "two"));
+        assertThat(invokes, contains(Integer.MAX_VALUE + ":5", "5:1", "0:4", "-5:2", Integer.MIN_VALUE + ":6"));
+    }
+
+    @Test
+    public void testRegisterWhilePublishing() throws InterruptedException {
+        logger.debug("testRegisterWhilePublishing()");
+
+        final BaseEventBus bus = new BaseEventBus();
+        final AtomicInteger received = new AtomicInteger();
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                received.incrementAndGet();
+            }
+        }, 0);
+
+        final AtomicBoolean publishing = new AtomicBoolean(true);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int priority = i - 2;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    EventObserver<MessageOne> observer = new EventObserver<MessageOne>() {
+                        public void onEvent(MessageOne event) {
+                        }
+                    };
+                    while (publishing.get())
+                        bus.register(MessageOne.class, observer, priority).unregister();
+                }
+            });
+            threads[i].start();
+        }
+
+        int count = 10000;
+        for (int i = 0; i < count; i++)
+            bus.publish(new MessageOne(i, "churn"));
+
+        publishing.set(false);
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(received.get(), is(count));
+    }
+
+    @Test
+    public void testRouting() {
+        logger.debug("testRouting()");
+
+        BaseEventBus bus = new BaseEventBus();
+        final List<String> invokes = new ArrayList<>();
+        final AtomicInteger others = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+                public void onEvent(MessageOne event) {
+                    others.incrementAndGet();
+                }
+            }, new SubscriberInfo(null, null, 0, null, new String[]{"topic" + i}));
+        }
+
+        String[][] subscribers = {
+                {"any", "0", null, null},
+                {"topicX", "1", null, "x"},
+                {"id7", "2", "7", null},
+                {"topicX-id7", "0", "7", "x"},
+                {"id7-low", "-1", "7", null},
+        };
+        for (final String[] subscriber : subscribers) {
+            bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+                public void onEvent(MessageOne event) {
+                    invokes.add(subscriber[0]);
+                }
+            }, new SubscriberInfo(null, null, Integer.parseInt(subscriber[1]),
+                    subscriber[2] == null ? null : new int[]{Integer.parseInt(subscriber[2])},
+                    subscriber[3] == null ? null : new String[]{subscriber[3]}));
+        }
+
+        bus.publish(new MessageOne(7, "x"));
+        // topic routed subscribers check ids on their own, these ones don't
+        assertThat(invokes, contains("id7", "topicX", "any", "topicX-id7", "id7-low"));
+        assertThat(others.get(), is(0));
+
+        invokes.clear();
+        bus.publish(new MessageOne(1, "y"));
+        assertThat(invokes, contains("any"));
+
+        invokes.clear();
+        bus.publish(new MessageOne(1, "topic42"));
+        assertThat(invokes, contains("any"));
+        assertThat(others.get(), is(1));
+    }
+
+    /**
+     * implemented against EventBus only, knows nothing about routing
+     */
+    public static class PlainEventBus implements EventBus {
+        private final Map<Class<?>, Observers<?>> observersMap = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        public <E extends Message> Observers.Handler<E> register(Class<E> eventClass, EventObserver<E> observer, int priority) {
+            Observers<E> observers = (Observers<E>) observersMap.get(eventClass);
+            if (observers == null) {
+                observers = new Observers<>();
+                observersMap.put(eventClass, observers);
+            }
+            return observers.register(observer);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <E extends Message> void publish(E event) {
+            Observers<E> observers = (Observers<E>) observersMap.get(event.getClass());
+            if (observers != null)
+                observers.notify(event);
+        }
+    }
+
+    @Test
+    public void testEventBusAdapter() {
+        logger.debug("testEventBusAdapter()");
+
+        BaseEventBus routingBus = new BaseEventBus();
+        assertThat(EventBusAdapter.of(routingBus), sameInstance((RoutingEventBus) routingBus));
+
+        PlainEventBus bus = new PlainEventBus();
+        final List<String> topics = new ArrayList<>();
+        Observers.Handler<MessageOne> handler = EventBusAdapter.of(bus).register(MessageOne.class,
+                new EventObserver<MessageOne>() {
+                    public void onEvent(MessageOne event) {
+                        topics.add(event.topic());
+                    }
+                }, new SubscriberInfo(null, null, 0, null, new String[]{"x"}));
+
+        bus.publish(new MessageOne(1, "x"));
+        bus.publish(new MessageOne(2, "y"));
+        assertThat(topics, contains("x"));
+
+        assertThat(handler.unregister(), is(true));
+        bus.publish(new MessageOne(3, "x"));
+        assertThat(topics, hasSize(1));
+
+        // metacode registers through the adapter
+        SubscribeHolder subscriber = new SubscribeHolder();
+        MetaHelper.registerSubscriber(bus, subscriber);
+        bus.publish(new MessageOne(4, "x"));
+        assertThat(subscriber.onMessageOneInvokes, is(1));
+
+        EventBusAdapter.of(bus).publishAll(Arrays.asList(new MessageOne(5, "x"), new MessageOne(6, "x")));
+        assertThat(subscriber.onMessageOneInvokes, is(3));
+    }
+
+    public static class BatchSubscribeHolder {
+        final List<List<MessageOne>> batches = new ArrayList<>();
+        final List<List<MessageOne>> evenBatches = new ArrayList<>();
+        final List<MessageTwo> twos = new ArrayList<>();
+
+        @Subscribe
+        void onMessagesOne(List<MessageOne> messages) {
+            batches.add(new ArrayList<>(messages));
+        }
+
+        @Subscribe(filters = EvenIdFilter.class)
+        void onEvenMessagesOne(List<MessageOne> messages) {
+            evenBatches.add(new ArrayList<>(messages));
+        }
+
+        @Subscribe
+        void onMessageTwo(MessageTwo message) {
+            twos.add(message);
+        }
+    }
+
+    @Test
+    public void testPublishAll() {
+        logger.debug("testPublishAll()");
+
+        BaseEventBus bus = new BaseEventBus();
+        BatchSubscribeHolder subscriber = new BatchSubscribeHolder();
+        SubscriptionHandler handler = MetaHelper.registerSubscriber(bus, subscriber);
+
+        MessageOne one1 = new MessageOne(1, "one");
+        MessageOne one2 = new MessageOne(2, "one");
+        MessageOne one3 = new MessageOne(3, "one");
+        MessageTwo two = new MessageTwo(4, "two");
+        MessageOne one4 = new MessageOne(4, "one");
+        bus.publishAll(new Message[]{one1, one2, one3, two, one4});
+
+        assertThat(subscriber.batches, hasSize(2));
+        assertThat(subscriber.batches.get(0), contains(one1, one2, one3));
+        assertThat(subscriber.batches.get(1), contains(one4));
+        assertThat(subscriber.evenBatches, hasSize(2));
+        assertThat(subscriber.evenBatches.get(0), contains(one2));
+        assertThat(subscriber.evenBatches.get(1), contains(one4));
+        assertThat(subscriber.twos, contains(two));
+
+        // single events come as singleton batches
+        bus.publish(new MessageOne(5, "one"));
+        assertThat(subscriber.batches, hasSize(3));
+        assertThat(subscriber.evenBatches, hasSize(2));
+
+        handler.unregisterAll();
+        bus.publishAll(Arrays.asList(one1, one2));
+        assertThat(subscriber.batches, hasSize(3));
+
+        // batches are copies, neither the caller nor the subscriber can change them
+        final List<List<MessageOne>> kept = new ArrayList<>();
+        bus.register(MessageOne.class, new BatchEventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                kept.add(Collections.singletonList(event));
+            }
+
+            public void onEvents(List<MessageOne> events) {
+                kept.add(events);
+            }
+        }, 0);
+        List<MessageOne> events = new ArrayList<>(Arrays.asList(one1, one2, one3));
+        bus.publishAll(events);
+        events.clear();
+        assertThat(kept, hasSize(1));
+        assertThat(kept.get(0), contains(one1, one2, one3));
+        try {
+            kept.get(0).add(one4);
+            assertThat(true, is(false));
+        } catch (UnsupportedOperationException e) {
+            assertThat(kept.get(0), hasSize(3));
+        }
+    }
+
     public static class IdFilterSubscribeHolder {
         @Log
         Logger logger;
@@ -421,4 +988,285 @@ public class EventBusTest extends BaseTest {
 
         handler.unregisterAll();
     }
+
+    @Test
+    public void testSticky() {
+        logger.debug("testSticky()");
+
+        BaseEventBus bus = new BaseEventBus();
+        bus.publishSticky(new MessageOne(1, "one"));
+        bus.publishSticky(new MessageOne(2, "two"));
+        bus.publish(new MessageOne(3, "three"));
+        assertThat(bus.getSticky(MessageOne.class).id(), is(2));
+        assertThat(bus.getSticky(MessageOne.class, "one").id(), is(1));
+        assertThat(bus.getSticky(MessageTwo.class), nullValue());
+
+        // the last one of the class
+        SubscribeHolder subscriber = new SubscribeHolder();
+        SubscriptionHandler handler = MetaHelper.registerSubscriber(bus, subscriber);
+        assertThat(subscriber.onMessageOneInvokes, is(1));
+        assertThat(subscriber.lastMessageOne.id(), is(2));
+        assertThat(subscriber.onMessageTwoInvokes, is(0));
+        handler.unregisterAll();
+
+        // the last one of each topic
+        TopicFilterSubscribeHolder topicSubscriber = new TopicFilterSubscribeHolder();
+        handler = MetaHelper.registerSubscriber(bus, topicSubscriber);
+        assertThat(topicSubscriber.onMessageOneTopicOneInvokes, is(1));
+        assertThat(topicSubscriber.onMessageOneTopicTwoInvokes, is(1));
+        handler.unregisterAll();
+
+        assertThat(bus.removeSticky(MessageOne.class).id(), is(2));
+        subscriber = new SubscribeHolder();
+        MetaHelper.registerSubscriber(bus, subscriber);
+        assertThat(subscriber.onMessageOneInvokes, is(0));
+    }
+
+    @Test
+    public void testStickyFailure() {
+        logger.debug("testStickyFailure()");
+
+        BaseEventBus bus = new BaseEventBus();
+        bus.publishSticky(new MessageOne(1, "one"));
+        final List<Integer> delivered = new ArrayList<>();
+        EventObserver<MessageOne> failing = new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                delivered.add(event.id());
+                throw new IllegalStateException("sticky");
+            }
+        };
+
+        // unregistered if it fails on the sticky event
+        try {
+            bus.register(MessageOne.class, failing, 0);
+            assertThat(true, is(false));
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("sticky"));
+        }
+        bus.publish(new MessageOne(2, "two"));
+        assertThat(delivered, contains(1));
+        assertThat(bus.getErrors().getFailureCount(), is(1L));
+
+        // registered if the failure is handled
+        bus.getErrors().setHandler(new ObserverErrors.ErrorHandler() {
+            public void onError(EventObserver<?> observer, Object event, RuntimeException error) {
+            }
+        });
+        bus.register(MessageOne.class, failing, 0);
+        bus.publish(new MessageOne(3, "three"));
+        assertThat(delivered, contains(1, 1, 3));
+    }
+
+    @Test
+    public void testMetrics() {
+        logger.debug("testMetrics()");
+
+        BaseEventBus bus = new BaseEventBus();
+        EventBusMetrics metrics = new EventBusMetrics();
+        bus.setListener(metrics);
+
+        bus.publish(new MessageOne(1, "dead"));
+        assertThat(metrics.getDeadEventCount(), is(1L));
+
+        SubscribeHolder subscriber = new SubscribeHolder();
+        SubscriptionHandler handler = MetaHelper.registerSubscriber(bus, subscriber);
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+            }
+        }, 0);
+        bus.publish(new MessageOne(2, "two"));
+        bus.publishAll(Arrays.asList(new MessageOne(3, "three"), new MessageOne(4, "four")));
+
+        EventBusMetrics.SubscriberStats stats = metrics.getStats(SubscribeHolder.class, "onMessageOne");
+        assertThat(stats.getInvocationCount(), is(3L));
+        assertThat(stats.getMaxNanos(), greaterThan(0L));
+        assertThat(stats.getPercentileNanos(100), greaterThanOrEqualTo(stats.getMaxNanos()));
+        assertThat(metrics.getStats(SubscribeHolder.class, "onMessageTwo"), nullValue());
+        assertThat(metrics.getUnknownStats().getInvocationCount(), is(3L));
+        assertThat(metrics.getDeadEventCount(), is(1L));
+
+        // off
+        bus.setListener(null);
+        bus.publish(new MessageOne(5, "five"));
+        handler.unregisterAll();
+        bus.publish(new MessageTwo(6, "dead"));
+        assertThat(stats.getInvocationCount(), is(3L));
+        assertThat(metrics.getDeadEventCount(), is(1L));
+    }
+
+    @Test
+    public void testSubscriberErrors() {
+        logger.debug("testSubscriberErrors()");
+
+        BaseEventBus bus = new BaseEventBus();
+        final List<Integer> notified = new ArrayList<>();
+        EventObserver<MessageOne> failing = new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                throw new IllegalStateException();
+            }
+        };
+        bus.register(MessageOne.class, failing, 10);
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                notified.add(event.id());
+            }
+        }, 0);
+
+        try {
+            bus.publish(new MessageOne(1, "fast"));
+            assertThat(true, is(false));
+        } catch (IllegalStateException e) {
+            assertThat(notified, empty());
+        }
+
+        final List<Object> handled = new ArrayList<>();
+        bus.getErrors().setHandler(new ObserverErrors.ErrorHandler() {
+            public void onError(EventObserver<?> observer, Object event, RuntimeException error) {
+                handled.add(event);
+            }
+        });
+        bus.publish(new MessageOne(2, "handle"));
+        bus.publishAll(Arrays.asList(new MessageOne(3, "three"), new MessageOne(4, "four")));
+        assertThat(notified, contains(2, 3, 4));
+        assertThat(handled, hasSize(3));
+        assertThat(bus.getErrors().getFailureCount(failing), is(4L));
+    }
+
+    @Test
+    public void testParallelNotify() {
+        logger.debug("testParallelNotify()");
+
+        BaseEventBus bus = new BaseEventBus();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        bus.setParallel(pool, 8);
+
+        final int count = 100;
+        final AtomicInteger high = new AtomicInteger();
+        final AtomicInteger low = new AtomicInteger();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+                public void onEvent(MessageOne event) {
+                    high.incrementAndGet();
+                }
+            }, 1);
+            bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+                public void onEvent(MessageOne event) {
+                    // all the higher priority subscribers are done
+                    if (high.get() != count * event.id())
+                        outOfOrder.incrementAndGet();
+                    low.incrementAndGet();
+                }
+            }, 0);
+        }
+
+        bus.publish(new MessageOne(1, "parallel"));
+        assertThat(high.get(), is(count));
+        assertThat(low.get(), is(count));
+        assertThat(outOfOrder.get(), is(0));
+
+        // small groups stay on the publisher's thread
+        final Thread publisher = Thread.currentThread();
+        final AtomicBoolean onPublisher = new AtomicBoolean();
+        bus.register(MessageTwo.class, new EventObserver<MessageTwo>() {
+            public void onEvent(MessageTwo event) {
+                onPublisher.set(Thread.currentThread() == publisher);
+            }
+        }, 0);
+        bus.publish(new MessageTwo(1, "single"));
+        assertThat(onPublisher.get(), is(true));
+
+        // fails fast after the group the failure is in
+        bus.register(MessageOne.class, new EventObserver<MessageOne>() {
+            public void onEvent(MessageOne event) {
+                throw new IllegalStateException();
+            }
+        }, 1);
+        try {
+            bus.publish(new MessageOne(2, "fail"));
+            assertThat(true, is(false));
+        } catch (IllegalStateException e) {
+            assertThat(high.get(), is(count * 2));
+            assertThat(low.get(), is(count));
+        }
+
+        pool.shutdown();
+    }
+
+    public static class WeakSubscribeHolder {
+        volatile int onMessageOneInvokes = 0;
+
+        @Subscribe(weak = true)
+        void onMessageOne(MessageOne message) {
+            onMessageOneInvokes++;
+        }
+    }
+
+    public static class InspectableEventBus extends BaseEventBus {
+        public InspectableEventBus(boolean weak) {
+            super(false, weak);
+        }
+
+        int subscribersCount(Class<?> eventClass) {
+            Subscribers<?> subscribers = subscribersMap.get(eventClass);
+            return subscribers == null ? 0 : subscribers.getAll().size();
+        }
+    }
+
+    @Test
+    public void testWeakSubscribe() {
+        logger.debug("testWeakSubscribe()");
+
+        InspectableEventBus bus = new InspectableEventBus(false);
+        WeakSubscribeHolder weakSubscriber = new WeakSubscribeHolder();
+        MetaHelper.registerSubscriber(bus, weakSubscriber);
+        SubscribeHolder strongSubscriber = new SubscribeHolder();
+        MetaHelper.registerSubscriber(bus, strongSubscriber);
+
+        bus.publish(new MessageOne(1, "one"));
+        assertThat(weakSubscriber.onMessageOneInvokes, is(1));
+        assertThat(bus.subscribersCount(MessageOne.class), is(2));
+
+        WeakReference<Object> weakRef = new WeakReference<Object>(weakSubscriber);
+        WeakReference<Object> strongRef = new WeakReference<Object>(strongSubscriber);
+        weakSubscriber = null;
+        strongSubscriber = null;
+        collect(weakRef);
+
+        // forgotten, not unregistered
+        bus.publish(new MessageOne(2, "two"));
+        assertThat(bus.subscribersCount(MessageOne.class), is(1));
+        assertThat(strongRef.get(), notNullValue());
+    }
+
+    @Test
+    public void testWeakBus() {
+        logger.debug("testWeakBus()");
+
+        InspectableEventBus bus = new InspectableEventBus(true);
+        SubscribeHolder subscriber = new SubscribeHolder();
+        MetaHelper.registerSubscriber(bus, subscriber);
+        bus.publish(new MessageOne(1, "one"));
+        assertThat(subscriber.onMessageOneInvokes, is(1));
+
+        WeakReference<Object> ref = new WeakReference<Object>(subscriber);
+        subscriber = null;
+        collect(ref);
+
+        // purged on register too
+        WeakSubscribeHolder other = new WeakSubscribeHolder();
+        MetaHelper.registerSubscriber(bus, other);
+        assertThat(bus.subscribersCount(MessageOne.class), is(1));
+        assertThat(bus.subscribersCount(MessageTwo.class), is(0));
+        bus.publish(new MessageOne(2, "two"));
+        assertThat(other.onMessageOneInvokes, is(1));
+    }
+
+    private void collect(WeakReference<?> ref) {
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            sleepQuietly(10);
+        }
+        assertThat(ref.get(), nullValue());
+    }
 }
@@ -19,15 +19,24 @@ package org.brooth.jeta.tests.inject;
 
 import org.brooth.jeta.*;
 import org.brooth.jeta.inject.Inject;
+import org.brooth.jeta.inject.InjectPlan;
 import org.brooth.jeta.inject.MetaScope;
 import org.brooth.jeta.inject.Producer;
+import org.brooth.jeta.inject.SingletonWarmUp;
 import org.brooth.jeta.log.Log;
 import org.brooth.jeta.metasitory.ClassForNameMetasitory;
 import org.brooth.jeta.metasitory.Criteria;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -87,6 +96,24 @@ public class MetaInjectTest extends BaseTest {
         assertFalse(holder.lazy.isPresent());
     }
 
+    @Test
+    public void testInjectPlan() {
+        logger.debug("testInjectPlan()");
+
+        InjectPlan<EntityHolder> plan = MetaHelper.injectPlan(EntityHolder.class);
+        EntityHolder one = new EntityHolder();
+        EntityHolder two = new EntityHolder();
+        MetaHelper.injectMeta(plan, one);
+        MetaHelper.injectMeta(plan, two);
+
+        assertThat(one.entity, notNullValue());
+        assertThat(two.entity, notNullValue());
+        assertFalse(one.entity == two.entity);
+        assertEquals(two.clazz, EntityOne.class);
+        assertThat(two.lazy.get().value, is("one"));
+        assertThat(two.provider.get().value, is("one"));
+    }
+
     public static class StaticEntityHolder {
         @Inject
         static EntityOne entity;
@@ -158,6 +185,106 @@ public class MetaInjectTest extends BaseTest {
         SingletonEntity entity;
     }
 
+    @Test
+    public void testSingletonContention() throws InterruptedException {
+        logger.debug("testSingletonContention()");
+
+        final int threadsCount = 8;
+        for (int i = 0; i < 50; i++) {
+            final MetaScope<DefaultScope> metaScope = MetaHelper.getMetaScope(new DefaultScope());
+            final CyclicBarrier barrier = new CyclicBarrier(threadsCount);
+            final SingletonHolder[] holders = new SingletonHolder[threadsCount];
+            final AtomicInteger failures = new AtomicInteger();
+
+            Thread[] threads = new Thread[threadsCount];
+            for (int t = 0; t < threadsCount; t++) {
+                final int index = t;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            barrier.await();
+                            SingletonHolder holder = new SingletonHolder();
+                            MetaHelper.injectMeta(metaScope, holder);
+                            holders[index] = holder;
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            assertThat(failures.get(), is(0));
+            for (SingletonHolder holder : holders) {
+                assertThat(holder.entity, notNullValue());
+                assertTrue(holder.entity == holders[0].entity);
+            }
+
+            // a singleton per meta scope
+            SingletonHolder other = new SingletonHolder();
+            MetaHelper.injectMeta(MetaHelper.getMetaScope(new DefaultScope()), other);
+            assertTrue(other.entity != holders[0].entity);
+        }
+    }
+
+    @Producer(singleton = true)
+    public static class WarmUpService {
+        static final List<Class<?>> created = Collections.synchronizedList(new ArrayList<Class<?>>());
+
+        public WarmUpService() {
+            created.add(WarmUpService.class);
+        }
+    }
+
+    @Producer(singleton = true)
+    public static class WarmUpClient {
+        @Inject
+        WarmUpService service;
+
+        public WarmUpClient() {
+            WarmUpService.created.add(WarmUpClient.class);
+        }
+    }
+
+    public static class WarmUpHolder {
+        @Inject
+        WarmUpService service;
+        @Inject
+        WarmUpClient client;
+        @Inject
+        SingletonEntity singleton;
+    }
+
+    @Test
+    public void testSingletonWarmUp() throws InterruptedException {
+        logger.debug("testSingletonWarmUp()");
+
+        WarmUpService.created.clear();
+        MetaScope<DefaultScope> metaScope = MetaHelper.getMetaScope(new DefaultScope());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Map<Class<?>, Long> times;
+        try {
+            times = new SingletonWarmUp(metaScope).run(executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(times.containsKey(WarmUpService.class));
+        assertTrue(times.containsKey(WarmUpClient.class));
+        assertTrue(times.containsKey(SingletonEntity.class));
+        // injected entities first
+        assertThat(WarmUpService.created, contains((Object) WarmUpService.class, WarmUpClient.class));
+
+        WarmUpHolder holder = new WarmUpHolder();
+        MetaHelper.injectMeta(metaScope, holder);
+        assertThat(holder.service, notNullValue());
+        assertThat(holder.client, notNullValue());
+        assertThat(holder.singleton, notNullValue());
+        assertThat(WarmUpService.created, hasSize(2));
+    }
+
     @Test
     public void testSingleton() {
         logger.debug("testSingleton()");
@@ -597,6 +724,24 @@ public class MetaInjectTest extends BaseTest {
         assertThat(holder.entitySeven.getValue(), is("seven ext ext"));
     }
 
+    @Test
+    public void testMetaProducerLookup() {
+        logger.debug("testMetaProducerLookup()");
+
+        // entities of the whole scope chain, the most specific producer wins
+        MetaScope<ExtExtScope> metaScope = MetaHelper.getMetaScope(new ExtExtScope());
+        assertThat(metaScope.getMetaProducer(EntitySix.class).getEntityClass(), equalTo((Object) EntitySixExtExt.class));
+        assertThat(metaScope.getMetaProducer(EntitySixExt.class).getEntityClass(), equalTo((Object) EntitySixExtExt.class));
+        assertThat(metaScope.getMetaProducer(EntitySeven.class).getEntityClass(), equalTo((Object) EntitySevenExtExt.class));
+        assertThat(metaScope.getMetaProducer(MetaExtScopeEntity.class), notNullValue());
+        assertThat(metaScope.getMetaProducer(ExtMetaHolder.class), nullValue());
+        assertThat(metaScope.getMetaProducer(EntitySix.class), sameInstance((Object) metaScope.getMetaProducer(EntitySix.class)));
+
+        MetaScope<ExtScope> extMetaScope = MetaHelper.getMetaScope(new ExtScope());
+        assertThat(extMetaScope.getMetaProducer(EntitySix.class).getEntityClass(), equalTo((Object) EntitySixExt.class));
+        assertThat(extMetaScope.getMetaProducer(EntitySixExtExt.class), nullValue());
+    }
+
     @Producer(of = String.class)
     public static class StringProvider {
         @Constructor
@@ -20,6 +20,7 @@ import org.brooth.jeta.BaseTest;
 import org.brooth.jeta.Logger;
 import org.brooth.jeta.MetaHelper;
 import org.brooth.jeta.log.Log;
+import org.brooth.jeta.log.LogPlan;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -69,4 +70,26 @@ public class LogTest extends BaseTest {
         assertEquals(customNameLogger.getName(), "Named");
         assertEquals(loggerHolder.customNameLogger.getName(), "Inner");
     }
+
+    public static class LoggerExtHolder extends LoggerHolder {
+        @Log
+        Logger extLogger;
+    }
+
+    @Test
+    public void testLogPlan() {
+        logger.debug("testLogPlan()");
+
+        LogPlan<LoggerExtHolder> plan = MetaHelper.logPlan(LoggerExtHolder.class);
+        for (int i = 0; i < 2; i++) {
+            LoggerExtHolder holder = new LoggerExtHolder();
+            holder.logger = null;
+            holder.extLogger = null;
+            MetaHelper.createLogger(plan, holder);
+
+            assertNotNull(holder.logger);
+            assertEquals(holder.extLogger.getName(), LoggerExtHolder.class.getSimpleName());
+            assertEquals(holder.customNameLogger.getName(), "Inner");
+        }
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Oleg Khalidov
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.brooth.jeta.tests.metasitory;
+
+import org.brooth.jeta.BaseTest;
+import org.brooth.jeta.Logger;
+import org.brooth.jeta.Metacode;
+import org.brooth.jeta.log.Log;
+import org.brooth.jeta.metasitory.CachedMetasitory;
+import org.brooth.jeta.metasitory.Criteria;
+import org.brooth.jeta.metasitory.IndexedMapMetasitory;
+import org.brooth.jeta.metasitory.MapMetasitory;
+import org.brooth.jeta.metasitory.Metasitory;
+import org.brooth.jeta.observer.Observers;
+import org.brooth.jeta.observer.Subject;
+import org.brooth.jeta.tests.MetasitoryContainer;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Oleg Khalidov (brooth@gmail.com)
+ */
+public class MetasitoryTest extends BaseTest {
+
+    @Log
+    Logger logger;
+
+    public static class LogHolder {
+        @Log
+        Logger logger;
+    }
+
+    public static class LogExtHolder extends LogHolder {
+        @Log
+        Logger extLogger;
+    }
+
+    public static class PlainExtHolder extends LogExtHolder {
+    }
+
+    public static class SubjectHolder extends LogHolder {
+        @Subject
+        Observers<String> observers;
+    }
+
+    public static class MixedHolder {
+        @Log
+        Logger logger;
+        @Subject
+        Observers<String> observers;
+    }
+
+    private final Metasitory map = new MapMetasitory(new MetasitoryContainer());
+    private final Metasitory indexed = new IndexedMapMetasitory(new MetasitoryContainer());
+
+    @Test
+    public void testIndexedMasterEq() {
+        logger.debug("testIndexedMasterEq()");
+
+        Criteria criteria = new Criteria.Builder().masterEq(LogExtHolder.class).usesAny(Log.class).build();
+        assertThat(masters(indexed, criteria), contains((Object) LogExtHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().masterEq(LogExtHolder.class).usesAny(Subject.class).build();
+        assertThat(masters(indexed, criteria), empty());
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().masterEq(PlainExtHolder.class).build();
+        assertThat(masters(indexed, criteria), empty());
+    }
+
+    @Test
+    public void testIndexedMasterEqDeep() {
+        logger.debug("testIndexedMasterEqDeep()");
+
+        Criteria criteria = new Criteria.Builder().masterEqDeep(PlainExtHolder.class).usesAny(Log.class).build();
+        assertThat(masters(indexed, criteria), containsInAnyOrder((Object) LogExtHolder.class, LogHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().masterEqDeep(SubjectHolder.class).usesAny(Subject.class).build();
+        assertThat(masters(indexed, criteria), contains((Object) SubjectHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().masterEq(LogHolder.class).masterEqDeep(LogExtHolder.class).build();
+        assertThat(masters(indexed, criteria), contains((Object) LogHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().masterEq(MixedHolder.class).masterEqDeep(LogExtHolder.class).build();
+        assertThat(masters(indexed, criteria), empty());
+    }
+
+    @Test
+    public void testIndexedUses() {
+        logger.debug("testIndexedUses()");
+
+        Criteria criteria = new Criteria.Builder().usesAny(Subject.class).build();
+        assertThat(masters(indexed, criteria), hasItems((Object) SubjectHolder.class, MixedHolder.class));
+        assertThat(masters(indexed, criteria), not(hasItem((Object) LogHolder.class)));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        criteria = new Criteria.Builder().usesAny(Subject.class).usesAny(Log.class).build();
+        assertThat(masters(indexed, criteria), hasItems((Object) LogHolder.class, SubjectHolder.class, MixedHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        Set<Class<? extends Annotation>> logOnly = new HashSet<>();
+        logOnly.add(Log.class);
+        criteria = new Criteria.Builder().usesAll(logOnly).build();
+        assertThat(masters(indexed, criteria), hasItems((Object) LogHolder.class, LogExtHolder.class));
+        assertThat(masters(indexed, criteria), not(hasItem((Object) MixedHolder.class)));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+
+        Set<Class<? extends Annotation>> logAndSubject = new HashSet<>(logOnly);
+        logAndSubject.add(Subject.class);
+        criteria = new Criteria.Builder().usesAll(logAndSubject).usesAny(Subject.class).build();
+        assertThat(masters(indexed, criteria), hasItems((Object) SubjectHolder.class, MixedHolder.class));
+        assertThat(masters(indexed, criteria), equalTo(masters(map, criteria)));
+    }
+
+    @Test
+    public void testCachedSearch() {
+        logger.debug("testCachedSearch()");
+
+        MapMetasitory mapMetasitory = new MapMetasitory(new MetasitoryContainer());
+        CachedMetasitory cached = new CachedMetasitory(mapMetasitory);
+
+        Criteria criteria = new Criteria.Builder().masterEqDeep(PlainExtHolder.class).usesAny(Log.class).build();
+        Collection<Metacode<?>> first = cached.search(criteria);
+        assertThat(masters(cached, criteria), containsInAnyOrder((Object) LogExtHolder.class, LogHolder.class));
+        assertThat(cached.getMissCount(), is(1L));
+        assertThat(cached.getHitCount(), is(1L));
+
+        // equal criteria hits the cache
+        Criteria equal = new Criteria.Builder().masterEqDeep(PlainExtHolder.class).usesAny(Log.class).build();
+        assertThat(cached.search(equal), sameInstance(first));
+        assertThat(cached.getMissCount(), is(1L));
+        assertThat(cached.getHitCount(), is(2L));
+        assertThat(cached.size(), is(1));
+
+        // loading a container invalidates
+        mapMetasitory.loadContainer(new MetasitoryContainer());
+        Collection<Metacode<?>> reloaded = cached.search(criteria);
+        assertThat(reloaded, not(sameInstance(first)));
+        assertThat(cached.getMissCount(), is(2L));
+        assertThat(cached.size(), is(1));
+
+        // so does adding other metasitory
+        cached.add(new CachedMetasitory(new MapMetasitory(new MetasitoryContainer())));
+        assertThat(cached.size(), is(0));
+        assertThat(cached.search(criteria), not(sameInstance(reloaded)));
+        assertThat(cached.getMissCount(), is(3L));
+    }
+
+    @Test
+    public void testSearchWhileLoading() throws InterruptedException {
+        logger.debug("testSearchWhileLoading()");
+
+        final MapMetasitory[] metasitories = {
+                new MapMetasitory(new MetasitoryContainer()),
+                new IndexedMapMetasitory(new MetasitoryContainer())
+        };
+        final Criteria criteria = new Criteria.Builder().masterEqDeep(PlainExtHolder.class).usesAny(Log.class).build();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicBoolean loading = new AtomicBoolean(true);
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    while (loading.get())
+                        for (MapMetasitory metasitory : metasitories)
+                            if (metasitory.search(criteria).size() != 2)
+                                failures.incrementAndGet();
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int i = 0; i < 100; i++)
+            for (MapMetasitory metasitory : metasitories)
+                metasitory.loadContainer(new MetasitoryContainer());
+
+        loading.set(false);
+        for (Thread reader : readers)
+            reader.join();
+
+        assertThat(failures.get(), is(0));
+        assertThat(metasitories[0].getRevision(), is(101));
+    }
+
+    @Test
+    public void testMetacodeSingleton() {
+        logger.debug("testMetacodeSingleton()");
+
+        Criteria criteria = new Criteria.Builder().masterEq(LogHolder.class).build();
+        Metacode<?> metacode = map.search(criteria).iterator().next();
+        assertThat(map.search(criteria).iterator().next(), sameInstance((Object) metacode));
+        assertThat(indexed.search(criteria).iterator().next(), not(sameInstance((Object) metacode)));
+    }
+
+    private static Set<Object> masters(Metasitory metasitory, Criteria criteria) {
+        Set<Object> result = new HashSet<>();
+        for (Metacode<?> metacode : metasitory.search(criteria))
+            result.add(metacode.getMasterClass());
+        return result;
+    }
+}
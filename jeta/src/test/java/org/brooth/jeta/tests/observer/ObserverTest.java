@@ -20,14 +20,27 @@ import org.brooth.jeta.BaseTest;
 import org.brooth.jeta.Logger;
 import org.brooth.jeta.MetaHelper;
 import org.brooth.jeta.log.Log;
+import org.brooth.jeta.observer.ArrayObservers;
+import org.brooth.jeta.observer.EventObserver;
+import org.brooth.jeta.observer.NamedExecutorProvider;
 import org.brooth.jeta.observer.Observe;
+import org.brooth.jeta.observer.ObserverErrors;
 import org.brooth.jeta.observer.ObserverHandler;
 import org.brooth.jeta.observer.Observers;
 import org.brooth.jeta.observer.Subject;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Oleg Khalidov (brooth@gmail.com)
@@ -247,6 +260,165 @@ public class ObserverTest extends BaseTest {
         assertThat(otherObserver.lastOtherEventOne, not(nullValue()));
     }
 
+    @Test
+    public void testBulkUnregister() {
+        logger.debug("testBulkUnregister()");
+
+        final List<Integer> notified = new ArrayList<>();
+        Observers<EventOne> observers = new Observers<>();
+        List<EventObserver<EventOne>> all = new ArrayList<>();
+        List<Observers.Handler<?>> handlers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            EventObserver<EventOne> observer = new EventObserver<EventOne>() {
+                public void onEvent(EventOne event) {
+                    notified.add(index);
+                }
+            };
+            all.add(observer);
+            handlers.add(observers.register(observer));
+        }
+
+        assertThat(observers.unregisterAll(all.subList(0, 4)), is(4));
+        assertThat(observers.unregisterAll(all.subList(0, 4)), is(0));
+        assertThat(Observers.unregisterHandlers(handlers.subList(3, 6)), is(2));
+        observers.notify(new EventOne("bulk"));
+        assertThat(notified, contains(6, 7, 8, 9));
+
+        // by event class, across the observables
+        ObservableHolder observable = new ObservableHolder();
+        MetaHelper.createObservable(observable);
+        OtherObservableHolder otherObservable = new OtherObservableHolder();
+        MetaHelper.createObservable(otherObservable);
+        ObserverHolder observer = new ObserverHolder();
+        ObserverHandler handler = MetaHelper.registerObserver(observer, observable);
+        handler.add(MetaHelper.registerObserver(observer, otherObservable));
+
+        assertThat(handler.unregister(EventOne.class), is(2));
+        assertThat(handler.unregister(EventOne.class), is(0));
+        assertThat(handler.unregister(EventOne.class, OtherObservableHolder.class), is(0));
+        observable.oneObservers.notify(new EventOne("none"));
+        otherObservable.oneObservers.notify(new EventOne("none"));
+        observable.twoObservers.notify(new EventTwo("catch two"));
+        assertThat(observer.onEventOneInvokes, is(0));
+        assertThat(observer.onOtherEventOneInvokes, is(0));
+        assertThat(observer.onEventTwoInvokes, is(1));
+
+        assertThat(handler.unregisterAll(ObservableHolder.class), is(1));
+        assertThat(handler.unregisterAll(), is(0));
+    }
+
+    public static class ArrayObservableHolder {
+        @Subject
+        ArrayObservers<EventOne> oneObservers;
+    }
+
+    public static class ArrayObserverHolder {
+        final List<String> events = new ArrayList<>();
+
+        @Observe(ArrayObservableHolder.class)
+        void onEventOne(EventOne event) {
+            events.add(event.value);
+        }
+    }
+
+    @Test
+    public void testArrayObservers() {
+        logger.debug("testArrayObservers()");
+
+        ArrayObservableHolder observable = new ArrayObservableHolder();
+        MetaHelper.createObservable(observable);
+        assertThat(observable.oneObservers, instanceOf(ArrayObservers.class));
+
+        ArrayObserverHolder observer = new ArrayObserverHolder();
+        ArrayObserverHolder other = new ArrayObserverHolder();
+        ObserverHandler handler = MetaHelper.registerObserver(observer, observable);
+        ObserverHandler otherHandler = MetaHelper.registerObserver(other, observable);
+        assertThat(observable.oneObservers.notify(new EventOne("both")), is(2));
+        assertThat(observable.oneObservers.getAll(), hasSize(2));
+
+        assertThat(handler.unregisterAll(), is(1));
+        assertThat(observable.oneObservers.notify(new EventOne("other")), is(1));
+        assertThat(observer.events, contains("both"));
+        assertThat(other.events, contains("both", "other"));
+
+        // errors are isolated as by Observers
+        EventObserver<EventOne> failing = new EventObserver<EventOne>() {
+            public void onEvent(EventOne event) {
+                throw new IllegalStateException(event.value);
+            }
+        };
+        observable.oneObservers.register(failing);
+        ObserverErrors errors = new ObserverErrors(ObserverErrors.Policy.ISOLATE);
+        errors.setHandler(new ObserverErrors.ErrorHandler() {
+            public void onError(EventObserver<?> observer, Object event, RuntimeException error) {
+            }
+        });
+        observable.oneObservers.setErrors(errors);
+        otherHandler.add(MetaHelper.registerObserver(observer, observable));
+        assertThat(observable.oneObservers.notify(new EventOne("handled")), is(3));
+        assertThat(observer.events, contains("both", "handled"));
+        assertThat(errors.getFailureCount(failing), is(1L));
+
+        assertThat(otherHandler.unregisterAll(), is(2));
+        assertThat(observable.oneObservers.getAll(), hasSize(1));
+        assertSame(failing, observable.oneObservers.getAll().get(0));
+        observable.oneObservers.clear();
+        assertThat(observable.oneObservers.notify(new EventOne("none")), is(0));
+    }
+
+    public static class ExecutorObserverHolder {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        volatile Thread thread;
+
+        @Observe(value = OtherObservableHolder.class, mode = Observe.Mode.SERIAL, executor = "pool")
+        void onOtherEventOne(EventOne event) {
+            thread = Thread.currentThread();
+            events.add(event.value);
+        }
+
+        @Observe(value = ArrayObservableHolder.class, mode = Observe.Mode.EXECUTOR, executor = "missing")
+        void onArrayEventOne(EventOne event) {
+        }
+    }
+
+    @Test
+    public void testObserveOnExecutor() throws InterruptedException {
+        logger.debug("testObserveOnExecutor()");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        NamedExecutorProvider executors = new NamedExecutorProvider() {
+            public Executor get(String name) {
+                return name.equals("pool") ? pool : null;
+            }
+        };
+
+        OtherObservableHolder observable = new OtherObservableHolder();
+        MetaHelper.createObservable(observable);
+        ExecutorObserverHolder observer = new ExecutorObserverHolder();
+        MetaHelper.registerObserver(observer, observable, executors);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            observable.oneObservers.notify(new EventOne("event " + i));
+            expected.add("event " + i);
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(observer.events, equalTo(expected));
+        assertThat(observer.thread, not(sameInstance(Thread.currentThread())));
+
+        // nothing is registered if an executor is missing
+        ArrayObservableHolder arrayObservable = new ArrayObservableHolder();
+        MetaHelper.createObservable(arrayObservable);
+        try {
+            MetaHelper.registerObserver(observer, arrayObservable, executors);
+            assertThat(true, is(false));
+        } catch (IllegalArgumentException e) {
+            assertThat(arrayObservable.oneObservers.getAll(), empty());
+        }
+    }
+
     public static class ConcurrentModificationTestHolder {
         @Log
         Logger logger;
@@ -278,4 +450,117 @@ public class ObserverTest extends BaseTest {
         assertThat(holder.handler.unregisterAll(), is(0));
     }
 
+    @Test
+    public void testErrorPolicy() {
+        logger.debug("testErrorPolicy()");
+
+        final List<String> notified = new ArrayList<>();
+        Observers<EventOne> observers = new Observers<>();
+        observers.register(new EventObserver<EventOne>() {
+            public void onEvent(EventOne event) {
+                notified.add("first");
+            }
+        });
+        EventObserver<EventOne> failing = new EventObserver<EventOne>() {
+            public void onEvent(EventOne event) {
+                throw new IllegalStateException(event.value);
+            }
+        };
+        observers.register(failing);
+        observers.register(failing);
+        observers.register(new EventObserver<EventOne>() {
+            public void onEvent(EventOne event) {
+                notified.add("last");
+            }
+        });
+
+        // fail fast by default
+        try {
+            observers.notify(new EventOne("fast"));
+            assertThat(true, is(false));
+        } catch (IllegalStateException e) {
+            assertThat(notified, contains("first"));
+        }
+
+        ObserverErrors errors = new ObserverErrors(ObserverErrors.Policy.ISOLATE);
+        observers.setErrors(errors);
+        notified.clear();
+        try {
+            observers.notify(new EventOne("isolate"));
+            assertThat(true, is(false));
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("isolate"));
+            assertThat(e.getSuppressed().length, is(1));
+            assertThat(notified, contains("first", "last"));
+        }
+
+        final List<Object> handled = new ArrayList<>();
+        errors.setHandler(new ObserverErrors.ErrorHandler() {
+            public void onError(EventObserver<?> observer, Object event, RuntimeException error) {
+                handled.add(event);
+            }
+        });
+        notified.clear();
+        observers.notify(new EventOne("handle"));
+        assertThat(notified, contains("first", "last"));
+        assertThat(handled, hasSize(2));
+
+        assertThat(errors.getFailureCount(), is(4L));
+        assertThat(errors.getFailureCount(failing), is(4L));
+        // counted till the last registration is gone
+        observers.unregister(failing);
+        assertThat(errors.getFailureCount(failing), is(4L));
+        assertThat(observers.unregisterAll(Collections.singletonList(failing)), is(1));
+        assertThat(errors.getFailureCount(failing), is(0L));
+        assertThat(observers.getAll(), hasSize(2));
+
+        observers.register(failing);
+        observers.notify(new EventOne("clear"));
+        assertThat(errors.getFailureCount(failing), is(1L));
+        observers.clear();
+        assertThat(errors.getFailureCount(failing), is(0L));
+    }
+
+    @Test
+    public void testObservablePerInstance() throws InterruptedException {
+        logger.debug("testObservablePerInstance()");
+
+        // observer registered before the observable is created
+        ObservableHolder observable = new ObservableHolder();
+        ObserverHolder observer = new ObserverHolder();
+        MetaHelper.registerObserver(observer, observable);
+        Observers<EventOne> observers = observable.oneObservers;
+        assertThat(observers, notNullValue());
+        MetaHelper.createObservable(observable);
+        assertThat(observable.oneObservers, sameInstance(observers));
+        observable.oneObservers.notify(new EventOne("registered before"));
+        assertThat(observer.onEventOneInvokes, is(1));
+
+        // many threads creating the same observables get the same observers
+        final ObservableHolder[] observables = new ObservableHolder[1000];
+        for (int i = 0; i < observables.length; i++)
+            observables[i] = new ObservableHolder();
+
+        final List<List<Observers<?>>> created = new ArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final List<Observers<?>> list = new ArrayList<>();
+            created.add(list);
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (ObservableHolder holder : observables) {
+                        MetaHelper.createObservable(holder);
+                        list.add(holder.oneObservers);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < observables.length; i++)
+            for (List<Observers<?>> list : created)
+                assertSame(observables[i].oneObservers, list.get(i));
+    }
 }